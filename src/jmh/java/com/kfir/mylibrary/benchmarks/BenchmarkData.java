@@ -0,0 +1,74 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.InMemoryBooksRepository;
+import com.kfir.mylibrary.utils.ObjectMapperUtil;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic catalogue used by the benchmarks, every 4th book is borrowed
+ */
+final class BenchmarkData {
+
+    static final int GENRES = 50;
+    static final int AUTHORS = 1000;
+
+    private BenchmarkData() {
+    }
+
+    static List<Book> books(int size) {
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            boolean borrowed = i % 4 == 0;
+            LocalDate borrowedDate = borrowed ? LocalDate.now().minusDays(random.nextInt(30)) : null;
+            books.add(Book.builder()
+                    .id(new UUID(random.nextLong(), random.nextLong()))
+                    .title("Title " + i)
+                    .author(author(random.nextInt(AUTHORS)))
+                    .genre(genre(random.nextInt(GENRES)))
+                    .isAvailable(!borrowed)
+                    .borrowedDate(borrowedDate)
+                    .dueDate(borrowed ? borrowedDate.plusDays(14) : null)
+                    .build());
+        }
+        return books;
+    }
+
+    /**
+     * Method for loading books into the embedded store, the repository the embedded profile runs with. It implements
+     * every repository method, so a benchmarked path never reaches an unsupported one
+     *
+     * @param directory - directory of the store, the caller deletes it
+     * @param books     - the books to insert
+     * @return the store
+     */
+    static InMemoryBooksRepository repository(Path directory, List<Book> books) {
+        InMemoryBooksRepository repo = new InMemoryBooksRepository(directory.toString(), false);
+        ApplicationEventPublisher noEvents = event -> {
+        };
+        ServiceBenchmark.inject(repo, "publisher", noEvents);
+        repo.insertAll(books);
+        return repo;
+    }
+
+    static List<BookDTO> bookDTOs(int size) {
+        return ObjectMapperUtil.mapAll(books(size), BookDTO.class);
+    }
+
+    static String author(int i) {
+        return "Author " + i;
+    }
+
+    static String genre(int i) {
+        return "Genre " + i;
+    }
+}
@@ -0,0 +1,63 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFilter;
+import com.kfir.mylibrary.repositories.InMemoryBooksRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Genre search of one branch on the embedded store while the number of branches grows and every branch keeps the
+ * same number of books. The branch scoped search should stay flat, the unscoped search grows with the catalogue
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BranchBenchmark {
+
+    private static final int BOOKS_PER_BRANCH = 2000;
+
+    @Param({"1", "10", "100"})
+    private int branches;
+
+    private Path directory;
+    private InMemoryBooksRepository repo;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("books-branch-benchmark");
+        List<Book> books = BenchmarkData.books(branches * BOOKS_PER_BRANCH);
+        for (int i = 0; i < books.size(); i++) {
+            books.get(i).setBranch(branch(i % branches));
+        }
+        repo = BenchmarkData.repository(directory, books);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<Book> genreInBranch() {
+        return repo.findAllMatching(BookFilter.byGenre(BenchmarkData.genre(7)).inBranch(branch(0)));
+    }
+
+    @Benchmark
+    public List<Book> genreInAllBranches() {
+        return repo.findAllMatching(BookFilter.byGenre(BenchmarkData.genre(7)));
+    }
+
+    private static String branch(int i) {
+        return "Branch " + i;
+    }
+}
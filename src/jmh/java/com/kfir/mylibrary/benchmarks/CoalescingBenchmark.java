@@ -0,0 +1,66 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFilter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Many threads reading the same page while every db call takes a millisecond. The repositoryCalls secondary
+ * result against the requests secondary result shows how many of the identical reads reached the db
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class CoalescingBenchmark {
+
+    private static final long DB_CALL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Param({"1", "1000"})
+    private int maxFollowers;
+
+    private BooksCache cache;
+    private Slice<Book> page;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls {
+        public long requests;
+        public long repositoryCalls;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            requests = 0;
+            repositoryCalls = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        cache = new BooksCache(1_000_000, Duration.ofMinutes(5), maxFollowers);
+        List<Book> books = BenchmarkData.books(100);
+        page = new SliceImpl<>(books, PageRequest.ofSize(books.size()), true);
+    }
+
+    @Benchmark
+    public Slice<Book> samePage(Calls calls) {
+        calls.requests++;
+        return cache.getPage(BookFilter.byGenre(BenchmarkData.genre(7)), null, 100, () -> {
+            calls.repositoryCalls++;
+            LockSupport.parkNanos(DB_CALL_NANOS);
+            return page;
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.cache.CompactBooks;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.utils.ObjectMapperUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained per book by the catalogue representations, reported as the bytesPerBook secondary result.
+ * Every representation is measured alone: the books it was built from are dropped before measuring
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseSerialGC")
+public class FootprintBenchmark {
+
+    private static final int SIZE = 200_000;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double bytesPerBook;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytesPerBook = 0;
+        }
+    }
+
+    @Benchmark
+    public Object entities(Footprint footprint) {
+        long before = usedHeap();
+        List<Book> books = BenchmarkData.books(SIZE);
+        footprint.bytesPerBook = (usedHeap() - before) / (double) SIZE;
+        return books;
+    }
+
+    @Benchmark
+    public Object dtos(Footprint footprint) {
+        long before = usedHeap();
+        List<BookDTO> bookDTOs = ObjectMapperUtil.mapAll(BenchmarkData.books(SIZE), BookDTO.class);
+        footprint.bytesPerBook = (usedHeap() - before) / (double) SIZE;
+        return bookDTOs;
+    }
+
+    @Benchmark
+    public Object compact(Footprint footprint) {
+        long before = usedHeap();
+        CompactBooks compactBooks = new CompactBooks();
+        BenchmarkData.books(SIZE).forEach(compactBooks::put);
+        footprint.bytesPerBook = (usedHeap() - before) / (double) SIZE;
+        return compactBooks;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
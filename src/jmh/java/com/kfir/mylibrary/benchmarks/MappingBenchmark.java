@@ -0,0 +1,49 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.utils.ObjectMapperUtil;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Book to BookDTO list mapping, the explicit mapper against the STRICT ModelMapper it replaced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    @Param({"1", "1000", "100000"})
+    private int size;
+
+    private List<Book> books;
+    private ModelMapper modelMapper;
+
+    @Setup
+    public void setup() {
+        books = BenchmarkData.books(size);
+        modelMapper = new ModelMapper();
+        modelMapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
+    }
+
+    @Benchmark
+    public List<BookDTO> modelMapper() {
+        return books.stream()
+                .map(book -> modelMapper.map(book, BookDTO.class))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BookDTO> objectMapperUtil() {
+        return ObjectMapperUtil.mapAll(books, BookDTO.class);
+    }
+}
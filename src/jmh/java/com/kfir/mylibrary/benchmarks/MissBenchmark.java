@@ -0,0 +1,84 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.repositories.BookFields;
+import com.kfir.mylibrary.services.BookResult;
+import com.kfir.mylibrary.servicesImpl.BooksServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches yielding no results, as served for scraper traffic. The exception variant is the previous path: the
+ * service throws an exception with a formatted message and a stack trace, the controller rethrows it as a
+ * ResponseStatusException (a second stack trace) that is then forwarded to the error page, which is not measured.
+ * The result variant is the current path: the service returns an empty result that is turned into the response
+ * directly
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class MissBenchmark {
+
+    private static final String MISSING_GENRE = "no such genre";
+
+    private Path directory;
+    private BooksServiceImpl service;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("books-miss-benchmark");
+        service = new BooksServiceImpl();
+        ServiceBenchmark.inject(service, "repo", BenchmarkData.repository(directory, BenchmarkData.books(10_000)));
+        ServiceBenchmark.inject(service, "jsonMapper", JsonMapper.builder().findAndAddModules().build());
+        ServiceBenchmark.inject(service, "cache", new BooksCache(1_000_000, Duration.ofMinutes(5), 1000));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Object exception() {
+        BookResult<StreamingResponseBody> result = service.findAllByGenre(MISSING_GENRE, null, BookFields.all(), MediaType.APPLICATION_JSON);
+        try {
+            try {
+                throw new TracedEmptyResultsException(String.format(
+                        "Search yielded no results, no results returned for the genre: '%s'", MISSING_GENRE));
+            } catch (TracedEmptyResultsException e) {
+                throw new ResponseStatusException(HttpStatus.ACCEPTED, e.getMessage());
+            }
+        } catch (ResponseStatusException e) {
+            return result.isOk() ? null : e;
+        }
+    }
+
+    @Benchmark
+    public Object result() {
+        return service.findAllByGenre(MISSING_GENRE, null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse();
+    }
+
+    /**
+     * The empty results exception as it was, capturing its stack trace
+     */
+    private static class TracedEmptyResultsException extends RuntimeException {
+        private TracedEmptyResultsException(String message) {
+            super(message);
+        }
+    }
+}
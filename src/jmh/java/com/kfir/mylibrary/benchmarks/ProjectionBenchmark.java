@@ -0,0 +1,104 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFields;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a large list result the way the mongo driver and Spring Data do (bson bytes to a document to a book),
+ * for whole documents against the documents projected to the fields of a list response. The projection is applied
+ * to the documents in the setup like the server would, the wireBytes secondary result is the size of the result on
+ * the wire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private static final int SIZE = 10_000;
+    private static final String WHOLE_DOCUMENT = "document";
+
+    // the whole documents, the fields of the dto (the default of the lists) and a sparse fieldset
+    @Param({WHOLE_DOCUMENT, "id,branch,title,author,genre,dueDate,borrowedDate", "title,author"})
+    private String fields;
+
+    private final Codec<Document> codec = new DocumentCodec().withUuidRepresentation(UuidRepresentation.STANDARD);
+    private MappingMongoConverter converter;
+    private List<byte[]> documents;
+    private long wireBytes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+        public long wireBytes;
+    }
+
+    @Setup
+    public void setup() {
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.emptyList());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        context.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        List<Book> books = BenchmarkData.books(SIZE);
+        for (int i = 0; i < books.size(); i++) {
+            books.get(i).setBranch("Branch " + i % 10);
+        }
+        documents = new ArrayList<>(books.size());
+        wireBytes = 0;
+        for (Book book : books) {
+            Document document = new Document();
+            converter.write(book, document);
+            if (!WHOLE_DOCUMENT.equals(fields)) {
+                BookFields projection = BookFields.parse(fields);
+                // _id is returned unless excluded, like the server does
+                document.keySet().removeIf(key -> !key.equals("_id") && !projection.includes(key));
+            }
+            byte[] bytes = encode(document);
+            wireBytes += bytes.length;
+            documents.add(bytes);
+        }
+    }
+
+    @Benchmark
+    public List<Book> decode(Wire wire) {
+        wire.wireBytes = wireBytes;
+        List<Book> books = new ArrayList<>(documents.size());
+        for (byte[] bytes : documents) {
+            Document document = codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DecoderContext.builder().build());
+            books.add(converter.read(Book.class, document));
+        }
+        return books;
+    }
+
+    private byte[] encode(Document document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,79 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.utils.BookJsonWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of list responses, configured like the Spring Boot ObjectMapper (iso dates), against writing
+ * the entities field by field to a json or smile generator like the list endpoints
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private List<BookDTO> bookDTOs;
+    private List<Book> books;
+    private ObjectWriter writer;
+
+    @Setup
+    public void setup() {
+        bookDTOs = BenchmarkData.bookDTOs(size);
+        books = BenchmarkData.books(size);
+        writer = JsonMapper.builder()
+                .findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build()
+                .writerFor(new TypeReference<List<BookDTO>>() {
+                });
+    }
+
+    @Benchmark
+    public byte[] toBytes() throws IOException {
+        return writer.writeValueAsBytes(bookDTOs);
+    }
+
+    @Benchmark
+    public void toStream() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), bookDTOs);
+    }
+
+    @Benchmark
+    public void entitiesToGenerator() throws IOException {
+        writeEntities(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public void entitiesToSmileGenerator() throws IOException {
+        writeEntities(BookJsonWriter.SMILE);
+    }
+
+    private void writeEntities(MediaType format) throws IOException {
+        try (JsonGenerator generator = BookJsonWriter.createGenerator(OutputStream.nullOutputStream(), format)) {
+            generator.writeStartArray();
+            for (Book book : books) {
+                BookJsonWriter.write(generator, book);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.repositories.BookFields;
+import com.kfir.mylibrary.servicesImpl.BooksServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full service methods (repository, cache, mapping, serialization) against the embedded store
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    @Param({"10000", "100000"})
+    private int catalogueSize;
+
+    private Path directory;
+    private BooksServiceImpl service;
+    private BooksCache cache;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("books-service-benchmark");
+        cache = new BooksCache(1_000_000, Duration.ofMinutes(5), 1000);
+        service = new BooksServiceImpl();
+        inject(service, "repo", BenchmarkData.repository(directory, BenchmarkData.books(catalogueSize)));
+        inject(service, "jsonMapper", JsonMapper.builder().findAndAddModules().build());
+        inject(service, "cache", cache);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long findAllByGenreCached() {
+        return write(service.findAllByGenre(BenchmarkData.genre(7), null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse());
+    }
+
+    @Benchmark
+    public long findAllByGenreUncached() {
+        cache.invalidateAll();
+        return write(service.findAllByGenre(BenchmarkData.genre(7), null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse());
+    }
+
+    @Benchmark
+    public long findAllByAuthorUncached() {
+        cache.invalidateAll();
+        return write(service.findAllByAuthor(BenchmarkData.author(7), null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse());
+    }
+
+    @Benchmark
+    public long findAll() {
+        return write(service.findAll(null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse());
+    }
+
+    @Benchmark
+    public long findAllByDueDateIsBefore() {
+        return write(service.findAllByDueDateIsBefore(null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse());
+    }
+
+    /**
+     * Writes the streamed body like the servlet container would, so the serialization is measured too
+     */
+    private static long write(ResponseEntity<StreamingResponseBody> response) {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            response.getBody().writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.count;
+    }
+
+    static void inject(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
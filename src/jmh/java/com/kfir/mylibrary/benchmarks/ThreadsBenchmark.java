@@ -0,0 +1,82 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.utils.BookMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 5000 concurrent clients on platform threads against virtual threads (spring.threads.virtual.enabled). Every
+ * request blocks on a simulated mongo round trip of latencyMillis, then maps and serializes the book it read.
+ * The platform threads are a pool of the size of the default Tomcat pool (200), the virtual threads one per
+ * request. One operation serves every client once
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadsBenchmark {
+
+    private static final int CLIENTS = 5000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"1", "10"})
+    private int latencyMillis;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().findAndAddModules().build();
+    private ExecutorService executor;
+    private Map<UUID, Book> books;
+    private List<UUID> ids;
+
+    @Setup
+    public void setup() {
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        books = BenchmarkData.books(10_000).stream().collect(Collectors.toMap(Book::getId, Function.identity()));
+        ids = new ArrayList<>(books.keySet());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public long serveClients() throws Exception {
+        List<Future<Integer>> responses = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            UUID id = ids.get(i % ids.size());
+            responses.add(executor.submit(() -> handle(id)));
+        }
+        long bytes = 0;
+        for (Future<Integer> response : responses) {
+            bytes += response.get();
+        }
+        return bytes;
+    }
+
+    /**
+     * One request: the thread blocks for the round trip like on the socket of the mongo driver
+     */
+    private int handle(UUID id) throws Exception {
+        Thread.sleep(latencyMillis);
+        return jsonMapper.writeValueAsBytes(BookMapper.toDTO(books.get(id))).length;
+    }
+}
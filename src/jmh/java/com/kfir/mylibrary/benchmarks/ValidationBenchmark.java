@@ -0,0 +1,36 @@
+package com.kfir.mylibrary.benchmarks;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.utils.validationUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private BookDTO valid;
+    private BookDTO blankGenre;
+
+    @Setup
+    public void setup() {
+        valid = BenchmarkData.bookDTOs(1).get(0);
+        blankGenre = BenchmarkData.bookDTOs(1).get(0);
+        blankGenre.setGenre("   ");
+    }
+
+    @Benchmark
+    public boolean valid() {
+        return validationUtil.isBookValidForSave(valid);
+    }
+
+    @Benchmark
+    public boolean blankGenre() {
+        return validationUtil.isBookValidForSave(blankGenre);
+    }
+}
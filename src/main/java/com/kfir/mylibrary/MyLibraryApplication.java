@@ -2,8 +2,10 @@ package com.kfir.mylibrary;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MyLibraryApplication {
     public static void main(String[] args) {
 
@@ -0,0 +1,165 @@
+package com.kfir.mylibrary.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookCursor;
+import com.kfir.mylibrary.repositories.BookFields;
+import com.kfir.mylibrary.repositories.BookFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache for the results of the books searches.
+ * Entries are keyed by the searched field, value, branch and fetched fields and are evicted by size (total number of
+ * cached books) and ttl. A change evicts the search of every fieldset requested so far.
+ * Concurrent identical searches and page reads are coalesced into one db call (books.coalescing.max-followers
+ * callers at most join a call), a call running when its books change is detached so later callers do not share it
+ */
+@Component
+public class BooksCache implements MeterBinder {
+
+    private final Cache<QueryKey, List<Book>> queries;
+    private final SingleFlight<QueryKey, List<Book>> queryLoads;
+    private final SingleFlight<PageKey, Slice<Book>> pageLoads;
+    // every fieldset a search was read with, few since they are subsets of the dto fields
+    private final Set<BookFields> fieldsets = ConcurrentHashMap.newKeySet();
+
+    public BooksCache(@Value("${books.cache.maximum-books:100000}") long maximumBooks,
+                      @Value("${books.cache.ttl:PT5M}") Duration ttl,
+                      @Value("${books.coalescing.max-followers:1000}") int maxFollowers) {
+        this.queryLoads = new SingleFlight<>("search", maxFollowers);
+        this.pageLoads = new SingleFlight<>("page", maxFollowers);
+        this.queries = Caffeine.newBuilder()
+                .maximumWeight(maximumBooks)
+                .weigher((QueryKey key, List<Book> books) -> books.size() + 1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Method for getting the cached result of a search, loading it on a miss.
+     * Invalidating a key while it is loading waits for the load and removes its result, so a stale result is never kept
+     *
+     * @param field  - the searched field
+     * @param value  - the searched value
+     * @param branch - the searched branch, null for all branches
+     * @param fields - the fields the books are fetched with
+     * @param loader - loads the result from the db on a miss
+     * @return unmodifiable list of the found books, shared by the callers so the books must not be modified
+     */
+    public List<Book> getQuery(String field, Object value, String branch, BookFields fields, Supplier<List<Book>> loader) {
+        fieldsets.add(fields);
+        QueryKey queryKey = new QueryKey(field, value, branch, fields);
+        return queryLoads.execute(queryKey,
+                () -> queries.get(queryKey, key -> Collections.unmodifiableList(loader.get())));
+    }
+
+    /**
+     * Method for reading a page of books, concurrent reads of the same page share one db call. Pages are not cached
+     *
+     * @param filter - which books to return
+     * @param after  - the cursor of the previous page, null for the first page
+     * @param size   - maximal number of books to return
+     * @param loader - reads the page from the db
+     * @return the page, shared by the coalesced callers so it must not be modified
+     */
+    public Slice<Book> getPage(BookFilter filter, BookCursor after, int size, Supplier<Slice<Book>> loader) {
+        return pageLoads.execute(new PageKey(filter, after, size), loader);
+    }
+
+    /**
+     * Method for evicting every search result the book takes part of
+     *
+     * @param book - the created or changed book (state after the change)
+     */
+    public void invalidate(Book book) {
+        invalidate(book.getTitle(), book.getAuthor(), book.getGenre(), book.getBranch());
+    }
+
+    /**
+     * Method for evicting the search results of the provided values and of both availability statuses,
+     * of all branches and of the branch of the book
+     *
+     * @param title  - title of the changed book
+     * @param author - author of the changed book
+     * @param genre  - genre of the changed book
+     * @param branch - branch of the changed book
+     */
+    public void invalidate(String title, String author, String genre, String branch) {
+        List<QueryKey> keys = new ArrayList<>();
+        for (BookFields fields : fieldsets) {
+            for (String scope : branch == null ? Collections.<String>singletonList(null) : Arrays.asList(null, branch)) {
+                keys.add(new QueryKey("title", title, scope, fields));
+                keys.add(new QueryKey("author", author, scope, fields));
+                keys.add(new QueryKey("genre", genre, scope, fields));
+                keys.add(new QueryKey("isAvailable", true, scope, fields));
+                keys.add(new QueryKey("isAvailable", false, scope, fields));
+            }
+        }
+        queries.invalidateAll(keys);
+        keys.forEach(queryLoads::forget);
+        pageLoads.forgetAll();
+    }
+
+    /**
+     * Method for evicting all the search results, used after changes to many books at once
+     */
+    public void invalidateAll() {
+        queries.invalidateAll();
+        queryLoads.forgetAll();
+        pageLoads.forgetAll();
+    }
+
+    public CacheStats stats() {
+        return queries.stats();
+    }
+
+    /**
+     * @return number of searches and page reads that shared the db call of an identical running one
+     */
+    public long coalescedCount() {
+        return queryLoads.coalescedCount() + pageLoads.coalescedCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, queries, "books.search");
+        queryLoads.bindTo(registry);
+        pageLoads.bindTo(registry);
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class QueryKey {
+        private final String field;
+        private final Object value;
+        private final String branch;
+        private final BookFields fields;
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class PageKey {
+        private final BookFilter filter;
+        private final BookCursor after;
+        private final int size;
+    }
+}
@@ -0,0 +1,305 @@
+package com.kfir.mylibrary.cache;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * Memory compact storage of books for the in-memory copies of the catalogue.
+ * Every book takes a slot of parallel arrays: the id as two longs, author and genre as ids of a dictionary of the
+ * distinct values (as is the branch), the dates as epoch days, the modification time as epoch millis and the availability as one bit.
+ * Slots are found by id through an open addressing table of ints, so no object is kept per book but its title.
+ * Books are materialized only when read, lists returned by {@link #lazyList} convert each book when it is read
+ * (by the serializer) and always show the latest version of the book
+ */
+public class CompactBooks {
+
+    private static final int NONE = -1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Dictionary authors = new Dictionary();
+    private final Dictionary genres = new Dictionary();
+    private final Dictionary branches = new Dictionary();
+    private final BitSet available = new BitSet();
+
+    private long[] idHigh = new long[INITIAL_CAPACITY];
+    private long[] idLow = new long[INITIAL_CAPACITY];
+    private String[] titles = new String[INITIAL_CAPACITY];
+    private int[] authorIds = new int[INITIAL_CAPACITY];
+    private int[] genreIds = new int[INITIAL_CAPACITY];
+    private int[] branchIds = new int[INITIAL_CAPACITY];
+    private int[] dueDates = new int[INITIAL_CAPACITY];
+    private int[] borrowedDates = new int[INITIAL_CAPACITY];
+    private long[] lastModified = new long[INITIAL_CAPACITY];
+
+    // bucket -> slot + 1, 0 for an empty bucket. kept at most half full
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int slotCount;
+    private int size;
+
+    /**
+     * Method for adding a book or replacing the stored version of it
+     *
+     * @param book - the book to store
+     */
+    public synchronized void put(Book book) {
+        long high = book.getId().getMostSignificantBits();
+        long low = book.getId().getLeastSignificantBits();
+        int slot = find(high, low);
+        if (slot == NONE) {
+            slot = allocate();
+            idHigh[slot] = high;
+            idLow[slot] = low;
+            insert(slot);
+            size++;
+        }
+        titles[slot] = book.getTitle();
+        authorIds[slot] = authors.idOf(book.getAuthor());
+        genreIds[slot] = genres.idOf(book.getGenre());
+        branchIds[slot] = branches.idOf(book.getBranch());
+        dueDates[slot] = toEpochDay(book.getDueDate());
+        borrowedDates[slot] = toEpochDay(book.getBorrowedDate());
+        lastModified[slot] = book.getLastModified() == null ? NO_TIME : book.getLastModified().toEpochMilli();
+        available.set(slot, book.isAvailable());
+    }
+
+    /**
+     * Method for removing a book
+     *
+     * @param id - id of the book to remove
+     * @return false in case the book is not stored
+     */
+    public synchronized boolean remove(UUID id) {
+        int bucket = bucketOf(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (bucket == NONE) {
+            return false;
+        }
+        int slot = table[bucket] - 1;
+        delete(bucket);
+        titles[slot] = null;
+        available.clear(slot);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+        return true;
+    }
+
+    /**
+     * @param id - id of the book
+     * @return the stored book, null in case it is not stored
+     */
+    public synchronized Book getBook(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot == NONE) {
+            return null;
+        }
+        return Book.builder()
+                .id(id)
+                .branch(branches.valueOf(branchIds[slot]))
+                .title(titles[slot])
+                .author(authors.valueOf(authorIds[slot]))
+                .genre(genres.valueOf(genreIds[slot]))
+                .dueDate(toDate(dueDates[slot]))
+                .borrowedDate(toDate(borrowedDates[slot]))
+                .isAvailable(available.get(slot))
+                .lastModified(lastModified[slot] == NO_TIME ? null : Instant.ofEpochMilli(lastModified[slot]))
+                .build();
+    }
+
+    /**
+     * @param id - id of the book
+     * @return the stored book as a dto, null in case it is not stored
+     */
+    public synchronized BookDTO getDTO(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot == NONE) {
+            return null;
+        }
+        BookDTO bookDTO = new BookDTO();
+        bookDTO.setId(id);
+        bookDTO.setBranch(branches.valueOf(branchIds[slot]));
+        bookDTO.setTitle(titles[slot]);
+        bookDTO.setAuthor(authors.valueOf(authorIds[slot]));
+        bookDTO.setGenre(genres.valueOf(genreIds[slot]));
+        bookDTO.setDueDate(toDate(dueDates[slot]));
+        bookDTO.setBorrowedDate(toDate(borrowedDates[slot]));
+        return bookDTO;
+    }
+
+    /**
+     * @param id     - id of the book
+     * @param branch - the branch
+     * @return true in case the book is stored and belongs to the branch
+     */
+    public synchronized boolean inBranch(UUID id, String branch) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return slot != NONE && branch.equals(branches.valueOf(branchIds[slot]));
+    }
+
+    /**
+     * Method for creating a list of the stored books that converts every book to a dto only when it is read.
+     * A book removed after the list was created is read as a dto with only its id
+     *
+     * @param ids - ids of the books in the order of the list
+     * @return unmodifiable list of the books
+     */
+    public List<BookDTO> lazyList(List<UUID> ids) {
+        return new LazyBookList(ids);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == idHigh.length) {
+            int capacity = idHigh.length * 2;
+            idHigh = Arrays.copyOf(idHigh, capacity);
+            idLow = Arrays.copyOf(idLow, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            authorIds = Arrays.copyOf(authorIds, capacity);
+            genreIds = Arrays.copyOf(genreIds, capacity);
+            branchIds = Arrays.copyOf(branchIds, capacity);
+            dueDates = Arrays.copyOf(dueDates, capacity);
+            borrowedDates = Arrays.copyOf(borrowedDates, capacity);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+        }
+        return slotCount++;
+    }
+
+    private int find(long high, long low) {
+        int bucket = bucketOf(high, low);
+        return bucket == NONE ? NONE : table[bucket] - 1;
+    }
+
+    private int bucketOf(long high, long low) {
+        int mask = table.length - 1;
+        for (int bucket = home(high, low, mask); table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = table[bucket] - 1;
+            if (idHigh[slot] == high && idLow[slot] == low) {
+                return bucket;
+            }
+        }
+        return NONE;
+    }
+
+    private void insert(int slot) {
+        if ((size + 1) * 2 > table.length) {
+            int[] previous = table;
+            table = new int[previous.length * 2];
+            for (int entry : previous) {
+                if (entry != 0) {
+                    place(entry);
+                }
+            }
+        }
+        place(slot + 1);
+    }
+
+    private void place(int entry) {
+        int mask = table.length - 1;
+        int bucket = home(idHigh[entry - 1], idLow[entry - 1], mask);
+        while (table[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = entry;
+    }
+
+    /**
+     * Linear probing deletion without tombstones, the following entries of the run are shifted back
+     */
+    private void delete(int bucket) {
+        int mask = table.length - 1;
+        int hole = bucket;
+        table[hole] = 0;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int slot = table[next] - 1;
+            int home = home(idHigh[slot], idLow[slot], mask);
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                table[hole] = table[next];
+                table[next] = 0;
+                hole = next;
+            }
+        }
+    }
+
+    private static int home(long high, long low, int mask) {
+        long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static LocalDate toDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Distinct values of a repeating field, a value is stored once and referenced by its id
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int idOf(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            return ids.computeIfAbsent(value, added -> {
+                values.add(added);
+                return values.size() - 1;
+            });
+        }
+
+        private String valueOf(int id) {
+            return id == NONE ? null : values.get(id);
+        }
+    }
+
+    private class LazyBookList extends AbstractList<BookDTO> implements RandomAccess {
+        private final List<UUID> ids;
+
+        private LazyBookList(List<UUID> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public BookDTO get(int index) {
+            UUID id = ids.get(index);
+            BookDTO bookDTO = getDTO(id);
+            if (bookDTO == null) {
+                bookDTO = new BookDTO();
+                bookDTO.setId(id);
+            }
+            return bookDTO;
+        }
+
+        @Override
+        public int size() {
+            return ids.size();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.kfir.mylibrary.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: the first caller of a key runs the call, callers of the same key arriving
+ * while it runs wait for it and share its result (or its exception). Nothing is kept once the call completes.
+ * At most maxFollowers callers join one call, the next caller starts a new call that the following callers join,
+ * so a slow or failing call holds back a bounded number of requests
+ *
+ * @param <K> - key of identical calls, must implement equals and hashCode
+ * @param <V> - result of the call, shared by all its callers so it must not be modified
+ */
+public class SingleFlight<K, V> implements MeterBinder {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final String name;
+    private final int maxFollowers;
+
+    /**
+     * @param name         - name of the calls, the tag of the metrics
+     * @param maxFollowers - maximal number of callers joining one call
+     */
+    public SingleFlight(String name, int maxFollowers) {
+        this.name = name;
+        this.maxFollowers = maxFollowers;
+    }
+
+    /**
+     * Method for running a call or joining the running call of the same key
+     *
+     * @param key  - identifies the call
+     * @param call - runs in the caller thread in case no identical call is running
+     * @return result of the call
+     */
+    public V execute(K key, Supplier<V> call) {
+        Flight<V> started = new Flight<>();
+        Flight<V> flight = flights.compute(key, (k, running) -> {
+            if (running != null && running.followers < maxFollowers) {
+                running.followers++;
+                return running;
+            }
+            return started;
+        });
+        if (flight != started) {
+            coalesced.increment();
+            return await(flight);
+        }
+        executed.increment();
+        try {
+            V result = call.get();
+            started.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            started.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, started);
+        }
+    }
+
+    /**
+     * Method for detaching the running call of a key, callers arriving afterwards start a new call.
+     * Used when the result of the running call may already be stale
+     *
+     * @param key - identifies the call
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    /**
+     * Method for detaching all the running calls
+     */
+    public void forgetAll() {
+        flights.clear();
+    }
+
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("books.coalescing.calls", executed, LongAdder::sum)
+                .tags("name", name, "result", "executed")
+                .description("Number of calls that ran")
+                .register(registry);
+        FunctionCounter.builder("books.coalescing.calls", coalesced, LongAdder::sum)
+                .tags("name", name, "result", "coalesced")
+                .description("Number of calls that shared the result of an identical running call")
+                .register(registry);
+        Gauge.builder("books.coalescing.in.flight", flights, ConcurrentHashMap::size)
+                .tag("name", name)
+                .description("Number of keys with a running call")
+                .register(registry);
+    }
+
+    private V await(Flight<V> flight) {
+        try {
+            return flight.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        // changed only inside compute, under the lock of the key
+        private int followers;
+    }
+}
@@ -0,0 +1,20 @@
+package com.kfir.mylibrary.config;
+
+import com.kfir.mylibrary.repositories.EmbeddedTransactionManager;
+import com.kfir.mylibrary.repositories.InMemoryBooksRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Transactions of the embedded store, used by the all-or-nothing batch operations
+ */
+@Configuration
+@Profile("embedded")
+public class EmbeddedTransactionConfig {
+
+    @Bean
+    public EmbeddedTransactionManager transactionManager(InMemoryBooksRepository store) {
+        return new EmbeddedTransactionManager(store);
+    }
+}
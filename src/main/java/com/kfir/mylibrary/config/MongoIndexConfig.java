@@ -0,0 +1,120 @@
+package com.kfir.mylibrary.config;
+
+import com.kfir.mylibrary.entities.Book;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Declares the indexes of the books collection, every repository search is served by one of them.
+ * Searches sort by title and id, so the equality fields are followed by title and _id.
+ * Every search index has a branch prefixed twin serving the searches of a single branch, and branch, _id is the
+ * shard key index. With books.sharding.enabled the collection is sharded on it, so the searches of a branch are
+ * routed to the shards holding that branch.
+ * The collection records the pre-images of its changes, so the change feed tells a borrow or a return written as a
+ * whole book replace from any other replace
+ */
+@Slf4j
+@Configuration
+@Profile("!embedded")
+public class MongoIndexConfig {
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Value("${books.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        IndexOperations books = template.indexOps(Book.class);
+        books.ensureIndex(titleOrdered("title_id", null, null));
+        books.ensureIndex(titleOrdered("author_title_id", null, "author"));
+        books.ensureIndex(titleOrdered("genre_title_id", null, "genre"));
+        books.ensureIndex(titleOrdered("isAvailable_title_id", null, "isAvailable"));
+        books.ensureIndex(titleOrdered("branch_title_id", "branch", null));
+        books.ensureIndex(titleOrdered("branch_author_title_id", "branch", "author"));
+        books.ensureIndex(titleOrdered("branch_genre_title_id", "branch", "genre"));
+        books.ensureIndex(titleOrdered("branch_isAvailable_title_id", "branch", "isAvailable"));
+        // only borrowed books have a due date
+        books.ensureIndex(new Index()
+                .named("dueDate_borrowed")
+                .on("dueDate", Sort.Direction.ASC)
+                .partial(PartialIndexFilter.of(Criteria.where("isAvailable").is(false))));
+        books.ensureIndex(new Index()
+                .named("branch_dueDate_borrowed")
+                .on("branch", Sort.Direction.ASC)
+                .on("dueDate", Sort.Direction.ASC)
+                .partial(PartialIndexFilter.of(Criteria.where("isAvailable").is(false))));
+        // the borrowed books changed since the previous overdue run
+        books.ensureIndex(new Index()
+                .named("lastModified_borrowed")
+                .on("lastModified", Sort.Direction.ASC)
+                .partial(PartialIndexFilter.of(Criteria.where("isAvailable").is(false))));
+        books.ensureIndex(new Index()
+                .named("branch_id")
+                .on("branch", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC));
+        if (shardingEnabled) {
+            shardCollection();
+        }
+        recordPreImages();
+    }
+
+    /**
+     * Pre-images need mongo 6.0, on older servers the replaces are sent as updates
+     */
+    private void recordPreImages() {
+        try {
+            template.getDb().runCommand(new Document("collMod", template.getCollectionName(Book.class))
+                    .append("changeStreamPreAndPostImages", new Document("enabled", true)));
+        } catch (MongoCommandException e) {
+            log.info("Books change pre-images not recorded: {}", e.getErrorMessage());
+        }
+    }
+
+    /**
+     * Shards the books collection on branch, _id. Ranged rather than hashed so the books of a branch stay together
+     * and a branch search reaches only the shards of that branch. Sharding an already sharded collection fails and
+     * is ignored
+     */
+    private void shardCollection() {
+        String namespace = template.getDb().getName() + "." + template.getCollectionName(Book.class);
+        MongoDatabase admin = template.getMongoDatabaseFactory().getMongoDatabase("admin");
+        try {
+            admin.runCommand(new Document("enableSharding", template.getDb().getName()));
+            admin.runCommand(new Document("shardCollection", namespace)
+                    .append("key", new Document("branch", 1).append("_id", 1)));
+        } catch (MongoCommandException e) {
+            log.info("Books collection not sharded: {}", e.getErrorMessage());
+        }
+    }
+
+    private CompoundIndexDefinition titleOrdered(String name, String prefix, String field) {
+        Document keys = new Document();
+        if (prefix != null) {
+            keys.append(prefix, 1);
+        }
+        if (field != null) {
+            keys.append(field, 1);
+        }
+        keys.append("title", 1).append("_id", 1);
+        CompoundIndexDefinition index = new CompoundIndexDefinition(keys);
+        index.named(name);
+        return index;
+    }
+}
@@ -1,113 +1,328 @@
 package com.kfir.mylibrary.controllers;
 
+import com.kfir.mylibrary.dto.BatchResultDTO;
 import com.kfir.mylibrary.dto.BookDTO;
-import com.kfir.mylibrary.exceptions.BookNotFoundException;
-import com.kfir.mylibrary.exceptions.EmptyResultsException;
+import com.kfir.mylibrary.dto.BookStatsDTO;
+import com.kfir.mylibrary.dto.BulkImportResultDTO;
 import com.kfir.mylibrary.exceptions.InvalidDataException;
-import com.kfir.mylibrary.exceptions.WrongStatusException;
+import com.kfir.mylibrary.repositories.BookFields;
+import com.kfir.mylibrary.repositories.BookFilter;
 import com.kfir.mylibrary.services.BooksService;
+import com.kfir.mylibrary.utils.BookJsonWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/books")
 public class BooksController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String NDJSON_FORMAT = "format=ndjson";
+    // scopes the lists and the search to one library branch, requests without it see all branches
+    private static final String BRANCH_HEADER = "X-Branch";
+
     @Autowired
     private BooksService service;
 
     /**
      * Rest call for retrieving all books regardless of their status (available, unavailable)
      *
-     * @return Response entity containing the result - list of all books
+     * @param cursor - optional, the cursor returned in the X-Next-Cursor header of the previous page
+     * @param size   - optional, page size. when cursor or size are provided a single page is returned
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity containing the result - list of all books. Like the other lists it is written while
+     * the books are read, as json or as smile when the Accept header asks for application/x-jackson-smile
      */
     @GetMapping
-    public ResponseEntity<List<BookDTO>> getAllBooks() {
-        return service.findAll();
+    public ResponseEntity<StreamingResponseBody> getAllBooks(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        MediaType format = BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        BookFields projection = BookFields.parse(fields);
+        String etag = catalogueETag(format.getSubtype(), branch, projection);
+        return unlessNotModified(request, etag, () -> cursor != null || size != null
+                ? service.findSlice(BookFilter.all().inBranch(branch).fetching(projection), cursor, size == null ? DEFAULT_PAGE_SIZE : size, format).toResponse()
+                : service.findAll(branch, projection, format).toResponse());
+    }
+
+    /**
+     * Rest call for streaming all books as newline delimited json
+     *
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity streaming all books, one json document per line
+     */
+    @GetMapping(params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamAllBooks(
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.streamAll(BookFilter.all().inBranch(branch).fetching(BookFields.parse(fields)));
     }
 
     /**
      * Rest call for retrieving all books according to the provided title
      *
      * @param title - the param for the search
+     * @param cursor - optional, the cursor returned in the X-Next-Cursor header of the previous page
+     * @param size   - optional, page size. when cursor or size are provided a single page is returned
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
      * @return Response entity containing the result - list of all books with title equal to param title
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     *         or accepted (202) in case the search yielded no results
+     * @throws InvalidDataException is thrown in case a field is unknown
      */
     @GetMapping(value = "/title/{title}")
-    public ResponseEntity<List<BookDTO>> getAllBooksByTitle(@PathVariable("title") String title) {
-        try {
-            return service.findAllByTitle(title);
-        } catch (EmptyResultsException e) {
-            throw new ResponseStatusException(HttpStatus.ACCEPTED, e.getMessage());
-        }
+    public ResponseEntity<StreamingResponseBody> getAllBooksByTitle(@PathVariable("title") String title,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        MediaType format = BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        BookFields projection = BookFields.parse(fields);
+        String etag = catalogueETag(format.getSubtype(), branch, projection);
+        return unlessNotModified(request, etag, () -> cursor != null || size != null
+                ? service.findSlice(BookFilter.byTitle(title).inBranch(branch).fetching(projection), cursor, size == null ? DEFAULT_PAGE_SIZE : size, format).toResponse()
+                : service.findAllByTitle(title, branch, projection, format).toResponse());
+    }
+
+    /**
+     * Rest call for streaming all books with the provided title as newline delimited json
+     *
+     * @param title - the param for the search
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity streaming the found books, one json document per line
+     */
+    @GetMapping(value = "/title/{title}", params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamAllBooksByTitle(@PathVariable("title") String title,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.streamAll(BookFilter.byTitle(title).inBranch(branch).fetching(BookFields.parse(fields)));
     }
 
     /**
      * Rest call for retrieving all books according to the provided author
      *
      * @param author - the param for the search
+     * @param cursor - optional, the cursor returned in the X-Next-Cursor header of the previous page
+     * @param size   - optional, page size. when cursor or size are provided a single page is returned
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
      * @return Response entity containing the result - list of all books with author equal to param author
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     *         or accepted (202) in case the search yielded no results
+     * @throws InvalidDataException is thrown in case a field is unknown
      */
     @GetMapping(value = "/author/{author}")
-    public ResponseEntity<List<BookDTO>> getAllBooksByAuthor(@PathVariable("author") String author) {
-        try {
-            return service.findAllByAuthor(author);
-        } catch (EmptyResultsException e) {
-            throw new ResponseStatusException(HttpStatus.ACCEPTED, e.getMessage());
-        }
+    public ResponseEntity<StreamingResponseBody> getAllBooksByAuthor(@PathVariable("author") String author,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        MediaType format = BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        BookFields projection = BookFields.parse(fields);
+        String etag = catalogueETag(format.getSubtype(), branch, projection);
+        return unlessNotModified(request, etag, () -> cursor != null || size != null
+                ? service.findSlice(BookFilter.byAuthor(author).inBranch(branch).fetching(projection), cursor, size == null ? DEFAULT_PAGE_SIZE : size, format).toResponse()
+                : service.findAllByAuthor(author, branch, projection, format).toResponse());
+    }
+
+    /**
+     * Rest call for streaming all books with the provided author as newline delimited json
+     *
+     * @param author - the param for the search
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity streaming the found books, one json document per line
+     */
+    @GetMapping(value = "/author/{author}", params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamAllBooksByAuthor(@PathVariable("author") String author,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.streamAll(BookFilter.byAuthor(author).inBranch(branch).fetching(BookFields.parse(fields)));
     }
 
     /**
      * Rest call for retrieving all books according to the provided genre
      *
      * @param genre - the param for the search
+     * @param cursor - optional, the cursor returned in the X-Next-Cursor header of the previous page
+     * @param size   - optional, page size. when cursor or size are provided a single page is returned
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
      * @return Response entity containing the result - list of all books with genre equal to param genre
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     *         or accepted (202) in case the search yielded no results
+     * @throws InvalidDataException is thrown in case a field is unknown
      */
     @GetMapping(value = "/genre/{genre}")
-    public ResponseEntity<List<BookDTO>> getAllBooksByGenre(@PathVariable("genre") String genre) {
-        try {
-            return service.findAllByGenre(genre);
-        } catch (EmptyResultsException e) {
-            throw new ResponseStatusException(HttpStatus.ACCEPTED, e.getMessage());
-        }
+    public ResponseEntity<StreamingResponseBody> getAllBooksByGenre(@PathVariable("genre") String genre,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        MediaType format = BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        BookFields projection = BookFields.parse(fields);
+        String etag = catalogueETag(format.getSubtype(), branch, projection);
+        return unlessNotModified(request, etag, () -> cursor != null || size != null
+                ? service.findSlice(BookFilter.byGenre(genre).inBranch(branch).fetching(projection), cursor, size == null ? DEFAULT_PAGE_SIZE : size, format).toResponse()
+                : service.findAllByGenre(genre, branch, projection, format).toResponse());
+    }
+
+    /**
+     * Rest call for streaming all books with the provided genre as newline delimited json
+     *
+     * @param genre - the param for the search
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity streaming the found books, one json document per line
+     */
+    @GetMapping(value = "/genre/{genre}", params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamAllBooksByGenre(@PathVariable("genre") String genre,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.streamAll(BookFilter.byGenre(genre).inBranch(branch).fetching(BookFields.parse(fields)));
     }
 
     /**
      * Rest call for retrieving all available books
      *
+     * @param cursor - optional, the cursor returned in the X-Next-Cursor header of the previous page
+     * @param size   - optional, page size. when cursor or size are provided a single page is returned
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
      * @return Response entity containing the result - list of all available books
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     *         or accepted (202) in case the search yielded no results
+     * @throws InvalidDataException is thrown in case a field is unknown
      */
     @GetMapping(value = "/allAvailable")
-    public ResponseEntity<List<BookDTO>> getAllAvailableBooks() {
-        try {
-            return service.findAllByIsAvailable(true);
-        } catch (EmptyResultsException e) {
-            throw new ResponseStatusException(HttpStatus.ACCEPTED, e.getMessage());
-        }
+    public ResponseEntity<StreamingResponseBody> getAllAvailableBooks(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        MediaType format = BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        BookFields projection = BookFields.parse(fields);
+        String etag = catalogueETag(format.getSubtype(), branch, projection);
+        return unlessNotModified(request, etag, () -> cursor != null || size != null
+                ? service.findSlice(BookFilter.byIsAvailable(true).inBranch(branch).fetching(projection), cursor, size == null ? DEFAULT_PAGE_SIZE : size, format).toResponse()
+                : service.findAllByIsAvailable(true, branch, projection, format).toResponse());
+    }
+
+    /**
+     * Rest call for streaming all available books as newline delimited json
+     *
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity streaming the available books, one json document per line
+     */
+    @GetMapping(value = "/allAvailable", params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamAllAvailableBooks(
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.streamAll(BookFilter.byIsAvailable(true).inBranch(branch).fetching(BookFields.parse(fields)));
+    }
+
+    /**
+     * Rest call for free text search of books by words of their title and author. Words are matched case
+     * insensitively, as prefixes and with one typo
+     *
+     * @param query - the words to search for
+     * @param limit - optional, maximal number of books to return (default 20, at most 100)
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity containing the best matching books, best first
+     *         or accepted (202) in case the search yielded no results
+     * @throws InvalidDataException is thrown in case the query has no words
+     */
+    @GetMapping(value = "/search")
+    public ResponseEntity<List<BookDTO>> searchBooks(@RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "20") int limit,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        String etag = catalogueETag(BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT)).getSubtype(), branch);
+        return unlessNotModified(request, etag, () -> service.search(query, limit, branch).toResponse());
     }
 
     /**
      * Rest call for creating new book
      *
      * @param bookDTO - according to this param the new book will be created
+     * @param branch  - optional, the X-Branch header, the branch of the new book when bookDTO has none
      * @return Response entity containing the newly created book
      * @throws InvalidDataException is thrown in case the bookDTO param is invalid. new book will NOT be created
      */
     @PostMapping(value = "/create")
-    public ResponseEntity<BookDTO> createBook(@RequestBody BookDTO bookDTO) {
-        try {
-            return service.createNew(bookDTO);
-        } catch (InvalidDataException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    public ResponseEntity<BookDTO> createBook(@RequestBody BookDTO bookDTO,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        if (bookDTO.getBranch() == null) {
+            bookDTO.setBranch(branch);
         }
+        return service.createNew(bookDTO);
+    }
+
+    /**
+     * Rest call for creating many new books from newline delimited json, one bookDTO per line
+     *
+     * @param books - the books to create
+     * @return Response entity containing a summary of the import and the errors of the rejected rows
+     * @throws InvalidDataException is thrown in case the body can not be read
+     */
+    @PostMapping(value = "/bulk", consumes = "application/x-ndjson")
+    public ResponseEntity<BulkImportResultDTO> bulkImportJson(InputStream books) {
+        return service.bulkImport(books, false);
+    }
+
+    /**
+     * Rest call for creating many new books from csv with a header line containing the columns title, author and genre
+     *
+     * @param books - the books to create
+     * @return Response entity containing a summary of the import and the errors of the rejected rows
+     * @throws InvalidDataException is thrown in case the body can not be read or the header is invalid
+     */
+    @PostMapping(value = "/bulk", consumes = "text/csv")
+    public ResponseEntity<BulkImportResultDTO> bulkImportCsv(InputStream books) {
+        return service.bulkImport(books, true);
+    }
+
+    /**
+     * Rest call for exporting all books as newline delimited json
+     *
+     * @return Response entity streaming all books, one json document per line
+     */
+    @GetMapping(value = "/export")
+    public ResponseEntity<StreamingResponseBody> exportBooks() {
+        return service.streamAll(BookFilter.all().fetching(BookFields.all()));
     }
 
     /**
@@ -115,72 +330,185 @@ public class BooksController {
      *
      * @param bookDTO - according to this param an existing book will be updated
      * @return Response entity containing the updated existing book
-     * @throws BookNotFoundException is thrown in case the book to update was not found in the db
-     * @throws InvalidDataException  is thrown in case the provided bookDTO is invalid. book will NOT be updated
+     *         or not found (404) in case the book to update was not found in the db
+     * @throws InvalidDataException is thrown in case the provided bookDTO is invalid. book will NOT be updated
      */
     @PutMapping(value = "/update")
     public ResponseEntity<BookDTO> updateBook(@RequestBody BookDTO bookDTO) {
-        try {
-            return service.updateBook(bookDTO);
-        } catch (BookNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        } catch (InvalidDataException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
-        }
+        return service.updateBook(bookDTO).toResponse();
     }
 
     /**
      * Rest call for borrowing a book
      *
-     * @param id - according to this param the book is borrowed
+     * @param id     - according to this param the book is borrowed
+     * @param branch - optional, the X-Branch header, the branch of the book. Required when the collection is sharded
+     *               on a mongo older than 7.1
      * @return Response entity containing the borrowed updated book
-     * @throws BookNotFoundException is thrown in case the book to borrow was not found in the db
-     * @throws WrongStatusException  is thrown when trying to change the status of the book from available
-     *                               to unavailable and the status is already unavailable
+     *         or not found (404) in case the book to borrow was not found in the db (in the branch), or conflict
+     *         (409) in case the book is already unavailable
      */
     @GetMapping(value = "/borrow/{id}")
-    public ResponseEntity<BookDTO> borrowBook(@PathVariable("id") String id) {
-        try {
-            return service.borrowBook(id);
-        } catch (WrongStatusException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
-        } catch (BookNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        }
+    public ResponseEntity<BookDTO> borrowBook(@PathVariable("id") String id,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.borrowBook(id, branch).toResponse();
     }
 
     /**
      * Rest call for returning a book
      *
-     * @param id - according to this param the book is returned
+     * @param id     - according to this param the book is returned
+     * @param branch - optional, the X-Branch header, the branch of the book. Required when the collection is sharded
+     *               on a mongo older than 7.1
      * @return Response entity containing the returned updated book
-     * @throws BookNotFoundException is thrown in case the book to return was not found in the db
-     * @throws WrongStatusException  is thrown when trying to change the status of the book from unavailable
-     *                               to available and the status is already available
+     *         or not found (404) in case the book to return was not found in the db (in the branch), or conflict
+     *         (409) in case the book is already available
      */
     @PutMapping(value = "/return/{id}")
-    public ResponseEntity<BookDTO> returnBook(@PathVariable("id") String id) {
-        try {
-            return service.returnBook(id);
-        } catch (WrongStatusException e) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
-        } catch (BookNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
-        }
+    public ResponseEntity<BookDTO> returnBook(@PathVariable("id") String id,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.returnBook(id, branch).toResponse();
+    }
+
+    /**
+     * Rest call for borrowing many books at once
+     *
+     * @param ids    - ids of the books to borrow
+     * @param atomic - optional, true for all-or-nothing: if any book can not be borrowed no book is borrowed
+     * @return Response entity containing the outcome of every id
+     * @throws InvalidDataException is thrown in case the batch is empty or too large
+     */
+    @PostMapping(value = "/borrow")
+    public ResponseEntity<BatchResultDTO> borrowBooks(@RequestBody List<String> ids,
+            @RequestParam(value = "atomic", defaultValue = "false") boolean atomic) {
+        return service.borrowBooks(ids, atomic);
+    }
+
+    /**
+     * Rest call for returning many books at once
+     *
+     * @param ids    - ids of the books to return
+     * @param atomic - optional, true for all-or-nothing: if any book can not be returned no book is returned
+     * @return Response entity containing the outcome of every id
+     * @throws InvalidDataException is thrown in case the batch is empty or too large
+     */
+    @PostMapping(value = "/return")
+    public ResponseEntity<BatchResultDTO> returnBooks(@RequestBody List<String> ids,
+            @RequestParam(value = "atomic", defaultValue = "false") boolean atomic) {
+        return service.returnBooks(ids, atomic);
     }
 
     /**
      * Rest call for getting all overdue books
      *
+     * @param cursor - optional, the cursor returned in the X-Next-Cursor header of the previous page
+     * @param size   - optional, page size. when cursor or size are provided a single page is returned
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
      * @return Response entity containing a list of the overdue books
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     *         or accepted (202) in case the search yielded no results
+     * @throws InvalidDataException is thrown in case a field is unknown
      */
     @GetMapping(value = "/dateIsDue")
-    public ResponseEntity<List<BookDTO>> getAllDateIsDueBooks() {
-        try {
-            return service.findAllByDueDateIsBefore();
-        } catch (EmptyResultsException e) {
-            throw new ResponseStatusException(HttpStatus.ACCEPTED, e.getMessage());
+    public ResponseEntity<StreamingResponseBody> getAllDateIsDueBooks(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch,
+            WebRequest request) {
+        MediaType format = BookJsonWriter.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        BookFields projection = BookFields.parse(fields);
+        String etag = catalogueETag(LocalDate.now(), format.getSubtype(), branch, projection);
+        return unlessNotModified(request, etag, () -> cursor != null || size != null
+                ? service.findSlice(BookFilter.byDueDateIsBefore(LocalDate.now()).inBranch(branch).fetching(projection), cursor, size == null ? DEFAULT_PAGE_SIZE : size, format).toResponse()
+                : service.findAllByDueDateIsBefore(branch, projection, format).toResponse());
+    }
+
+    /**
+     * Rest call for streaming all overdue books as newline delimited json
+     *
+     * @param fields - optional, comma separated fields of the books to return (id, branch, title, author, genre,
+     *               dueDate, borrowedDate), only these fields are returned
+     * @param branch - optional, the X-Branch header, only books of this branch are returned
+     * @return Response entity streaming the overdue books, one json document per line
+     */
+    @GetMapping(value = "/dateIsDue", params = NDJSON_FORMAT)
+    public ResponseEntity<StreamingResponseBody> streamAllDateIsDueBooks(
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = BRANCH_HEADER, required = false) String branch) {
+        return service.streamAll(BookFilter.byDueDateIsBefore(LocalDate.now()).inBranch(branch).fetching(BookFields.parse(fields)));
+    }
+
+    /**
+     * Rest call for subscribing to the books changes as server sent events. Every event is named after the change
+     * (create, update, borrow, return, delete) and carries the changed book. A resync event tells a reconnecting
+     * client it missed too many changes to be replayed and should reload the books
+     *
+     * @param lastEventId - optional, sent by reconnecting clients, the changes after that event are replayed first
+     * @return Response entity streaming the change events
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeToEvents(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return service.subscribeToEvents(lastEventId);
+    }
+
+    /**
+     * Rest call for getting the statistics of the catalogue
+     *
+     * @return Response entity containing the counts by genre, author and availability, the overdue count
+     * and the average loan duration in days
+     */
+    @GetMapping(value = "/stats")
+    public ResponseEntity<BookStatsDTO> getStats() {
+        return service.getStats();
+    }
+
+    /**
+     * Rest call for getting the statistics of the books search cache
+     *
+     * @return Response entity containing the cache hit, miss and eviction counters and the number of coalesced searches
+     */
+    @GetMapping(value = "/cacheStats")
+    public ResponseEntity<Map<String, Long>> getCacheStats() {
+        return service.getCacheStats();
+    }
+
+    /**
+     * The entity tag of a list response, it changes whenever any book changes.
+     * Checking it costs a single version lookup, the books are not searched nor serialized when it matches
+     *
+     * @param discriminators - other values the response depends on
+     * @return quoted entity tag
+     */
+    private String catalogueETag(Object... discriminators) {
+        StringBuilder etag = new StringBuilder("\"").append(service.getCatalogueVersion());
+        for (Object discriminator : discriminators) {
+            etag.append('-').append(discriminator);
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * Method for answering a conditional list request, not modified (304) when the client has the current catalogue
+     *
+     * @param request  - the request, with the entity tag the client has in If-None-Match
+     * @param etag     - the current entity tag of the response, see catalogueETag
+     * @param response - reads the response, called only when the client has an older catalogue
+     * @return the response with the entity tag, or not modified (304) without a body
+     */
+    private <T> ResponseEntity<T> unlessNotModified(WebRequest request, String etag, Supplier<ResponseEntity<T>> response) {
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
         }
+        return withETag(response.get(), etag);
+    }
+
+    private <T> ResponseEntity<T> withETag(ResponseEntity<T> response, String etag) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT, BRANCH_HEADER)
+                .body(response.getBody());
     }
 }
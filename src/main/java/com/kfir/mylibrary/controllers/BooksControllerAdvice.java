@@ -0,0 +1,57 @@
+package com.kfir.mylibrary.controllers;
+
+import com.kfir.mylibrary.exceptions.BookNotFoundException;
+import com.kfir.mylibrary.exceptions.EmptyResultsException;
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import com.kfir.mylibrary.exceptions.WrongStatusException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps the exceptions of the books service to responses, the failed results are turned into responses by
+ * {@link com.kfir.mylibrary.services.BookResult#toResponse()}.
+ * The response is written right away with the body of the Spring Boot error responses
+ * (timestamp, status, error, message, path), the request is not forwarded to the error page
+ */
+@RestControllerAdvice(assignableTypes = BooksController.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BooksControllerAdvice {
+
+    @ExceptionHandler(EmptyResultsException.class)
+    public ResponseEntity<Map<String, Object>> emptyResults(EmptyResultsException e, HttpServletRequest request) {
+        return error(HttpStatus.ACCEPTED, e.getMessage(), request);
+    }
+
+    @ExceptionHandler(BookNotFoundException.class)
+    public ResponseEntity<Map<String, Object>> bookNotFound(BookNotFoundException e, HttpServletRequest request) {
+        return error(HttpStatus.NOT_FOUND, e.getMessage(), request);
+    }
+
+    @ExceptionHandler(WrongStatusException.class)
+    public ResponseEntity<Map<String, Object>> wrongStatus(WrongStatusException e, HttpServletRequest request) {
+        return error(HttpStatus.CONFLICT, e.getMessage(), request);
+    }
+
+    @ExceptionHandler(InvalidDataException.class)
+    public ResponseEntity<Map<String, Object>> invalidData(InvalidDataException e, HttpServletRequest request) {
+        return error(HttpStatus.BAD_REQUEST, e.getMessage(), request);
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String message, HttpServletRequest request) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", OffsetDateTime.now());
+        body.put("status", status.value());
+        body.put("error", status.getReasonPhrase());
+        body.put("message", message);
+        body.put("path", request.getRequestURI());
+        return ResponseEntity.status(status).body(body);
+    }
+}
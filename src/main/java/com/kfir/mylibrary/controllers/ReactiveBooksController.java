@@ -0,0 +1,153 @@
+package com.kfir.mylibrary.controllers;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.exceptions.BookNotFoundException;
+import com.kfir.mylibrary.exceptions.EmptyResultsException;
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import com.kfir.mylibrary.exceptions.WrongStatusException;
+import com.kfir.mylibrary.services.ReactiveBooksService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non blocking variant of {@link BooksController} with the same paths and statuses, active with the reactive profile
+ * which runs the application as a reactive web application (see application-reactive.properties).
+ * List results are streamed with backpressure when requested as application/x-ndjson
+ */
+@RestController
+@RequestMapping("/books")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Profile("reactive & !embedded")
+public class ReactiveBooksController {
+
+    @Autowired
+    private ReactiveBooksService service;
+
+    /**
+     * Rest call for retrieving all books regardless of their status (available, unavailable)
+     *
+     * @return all books
+     */
+    @GetMapping
+    public Flux<BookDTO> getAllBooks() {
+        return service.findAll();
+    }
+
+    /**
+     * Rest call for retrieving all books according to the provided title
+     *
+     * @param title - the param for the search
+     * @return all books with title equal to param title
+     */
+    @GetMapping(value = "/title/{title}")
+    public Flux<BookDTO> getAllBooksByTitle(@PathVariable("title") String title) {
+        return service.findAllByTitle(title).onErrorMap(EmptyResultsException.class, this::accepted);
+    }
+
+    /**
+     * Rest call for retrieving all books according to the provided author
+     *
+     * @param author - the param for the search
+     * @return all books with author equal to param author
+     */
+    @GetMapping(value = "/author/{author}")
+    public Flux<BookDTO> getAllBooksByAuthor(@PathVariable("author") String author) {
+        return service.findAllByAuthor(author).onErrorMap(EmptyResultsException.class, this::accepted);
+    }
+
+    /**
+     * Rest call for retrieving all books according to the provided genre
+     *
+     * @param genre - the param for the search
+     * @return all books with genre equal to param genre
+     */
+    @GetMapping(value = "/genre/{genre}")
+    public Flux<BookDTO> getAllBooksByGenre(@PathVariable("genre") String genre) {
+        return service.findAllByGenre(genre).onErrorMap(EmptyResultsException.class, this::accepted);
+    }
+
+    /**
+     * Rest call for retrieving all available books
+     *
+     * @return all available books
+     */
+    @GetMapping(value = "/allAvailable")
+    public Flux<BookDTO> getAllAvailableBooks() {
+        return service.findAllByIsAvailable(true).onErrorMap(EmptyResultsException.class, this::accepted);
+    }
+
+    /**
+     * Rest call for creating new book
+     *
+     * @param bookDTO - according to this param the new book will be created
+     * @return the newly created book
+     */
+    @PostMapping(value = "/create")
+    public Mono<BookDTO> createBook(@RequestBody BookDTO bookDTO) {
+        return service.createNew(bookDTO)
+                .onErrorMap(InvalidDataException.class, e -> status(HttpStatus.BAD_REQUEST, e));
+    }
+
+    /**
+     * Rest call for updating an existing book
+     *
+     * @param bookDTO - according to this param an existing book will be updated
+     * @return the updated existing book
+     */
+    @PutMapping(value = "/update")
+    public Mono<BookDTO> updateBook(@RequestBody BookDTO bookDTO) {
+        return service.updateBook(bookDTO)
+                .onErrorMap(BookNotFoundException.class, e -> status(HttpStatus.NOT_FOUND, e))
+                .onErrorMap(InvalidDataException.class, e -> status(HttpStatus.BAD_REQUEST, e));
+    }
+
+    /**
+     * Rest call for borrowing a book
+     *
+     * @param id - according to this param the book is borrowed
+     * @return the borrowed updated book
+     */
+    @GetMapping(value = "/borrow/{id}")
+    public Mono<BookDTO> borrowBook(@PathVariable("id") String id) {
+        return service.borrowBook(id)
+                .onErrorMap(WrongStatusException.class, e -> status(HttpStatus.CONFLICT, e))
+                .onErrorMap(BookNotFoundException.class, e -> status(HttpStatus.NOT_FOUND, e));
+    }
+
+    /**
+     * Rest call for returning a book
+     *
+     * @param id - according to this param the book is returned
+     * @return the returned updated book
+     */
+    @PutMapping(value = "/return/{id}")
+    public Mono<BookDTO> returnBook(@PathVariable("id") String id) {
+        return service.returnBook(id)
+                .onErrorMap(WrongStatusException.class, e -> status(HttpStatus.CONFLICT, e))
+                .onErrorMap(BookNotFoundException.class, e -> status(HttpStatus.NOT_FOUND, e));
+    }
+
+    /**
+     * Rest call for getting all overdue books
+     *
+     * @return the overdue books
+     */
+    @GetMapping(value = "/dateIsDue")
+    public Flux<BookDTO> getAllDateIsDueBooks() {
+        return service.findAllByDueDateIsBefore().onErrorMap(EmptyResultsException.class, this::accepted);
+    }
+
+    private ResponseStatusException accepted(EmptyResultsException e) {
+        return status(HttpStatus.ACCEPTED, e);
+    }
+
+    private ResponseStatusException status(HttpStatus status, RuntimeException e) {
+        return new ResponseStatusException(status, e.getMessage());
+    }
+}
@@ -0,0 +1,27 @@
+package com.kfir.mylibrary.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchResultDTO {
+
+    private long succeeded;
+    private long failed;
+    private List<ItemResult> results = new ArrayList<>();
+
+    /**
+     * Outcome of a single id, status is the http status the single book call would have returned
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ItemResult {
+        private String id;
+        private int status;
+        private String message;
+        private BookDTO book;
+    }
+}
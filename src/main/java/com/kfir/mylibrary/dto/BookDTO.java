@@ -9,6 +9,7 @@ import java.util.UUID;
 public class BookDTO {
 
     private UUID id;
+    private String branch;
     private String title;
     private String author;
     private String genre;
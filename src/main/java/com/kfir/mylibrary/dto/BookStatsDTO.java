@@ -0,0 +1,19 @@
+package com.kfir.mylibrary.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+public class BookStatsDTO {
+
+    private long total;
+    private long available;
+    private long borrowed;
+    private long overdue;
+    private double averageLoanDays;
+    private Map<String, Long> byGenre;
+    private Map<String, Long> byAuthor;
+    private Instant computedAt;
+}
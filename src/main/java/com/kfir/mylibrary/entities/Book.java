@@ -6,25 +6,31 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Sharded;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Document("books")
+@Sharded(shardKey = {"branch", "id"})
 public class Book {
 
     @Id
     private UUID id;
+    // the library branch owning the book, null for books created before branches
+    private String branch;
     private String title;
     private String author;
     private String genre;
     private LocalDate dueDate;
     private LocalDate borrowedDate;
     private boolean isAvailable;
+    private Instant lastModified;
 
     public Book(String title, String author, String genre) {
         this.id = UUID.randomUUID();
@@ -32,6 +38,7 @@ public class Book {
         this.author = author;
         this.genre = genre;
         this.isAvailable = true;
+        this.lastModified = Instant.now();
     }
 
     @Override
@@ -0,0 +1,19 @@
+package com.kfir.mylibrary.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Version of a whole collection, advanced on every change of any of its documents
+ */
+@Data
+@NoArgsConstructor
+@Document("catalogueVersions")
+public class CatalogueVersion {
+
+    @Id
+    private String collection;
+    private long version;
+}
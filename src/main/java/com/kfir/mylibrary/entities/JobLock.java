@@ -0,0 +1,22 @@
+package com.kfir.mylibrary.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Lease of a background job, only the owner runs the job until the lease ends
+ */
+@Data
+@NoArgsConstructor
+@Document("jobLocks")
+public class JobLock {
+
+    @Id
+    private String job;
+    private String owner;
+    private Instant lockedUntil;
+}
@@ -0,0 +1,26 @@
+package com.kfir.mylibrary.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Progress of a background job, everything before the watermark was already processed, and so was every change
+ * before the start of the last run
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("jobWatermarks")
+public class JobWatermark {
+
+    @Id
+    private String job;
+    private LocalDate watermark;
+    private Instant lastRun;
+}
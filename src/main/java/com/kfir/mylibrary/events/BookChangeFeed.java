@@ -0,0 +1,18 @@
+package com.kfir.mylibrary.events;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Server sent events feed of the changes of the books. Every event is named after the change (create, borrow,
+ * return, update or delete) and carries the changed book
+ */
+public interface BookChangeFeed {
+
+    /**
+     * Method for subscribing to the feed
+     *
+     * @param lastEventId - id of the last event the subscriber received, null for new subscribers
+     * @return emitter of the events, completes after books.events.timeout and the client reconnects
+     */
+    SseEmitter subscribe(String lastEventId);
+}
@@ -0,0 +1,15 @@
+package com.kfir.mylibrary.events;
+
+import com.kfir.mylibrary.entities.Book;
+import lombok.Value;
+
+/**
+ * A change written to the embedded store, published in the order of the changes
+ */
+@Value
+public class BookChangedEvent {
+
+    long sequence;
+    String type;
+    Book book;
+}
@@ -0,0 +1,143 @@
+package com.kfir.mylibrary.events;
+
+import com.kfir.mylibrary.utils.BookMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server sent events feed of the changes of the embedded store. The id of every event is the sequence of the change,
+ * the latest changes are retained so a subscriber reconnecting with Last-Event-ID catches up on the changes it missed.
+ * Events are sent by the "Books_change_feed" thread, changes never wait for slow subscribers
+ */
+@Component
+@Profile("embedded")
+public class EmbeddedBookChangeFeed implements BookChangeFeed {
+
+    private static final int RETAINED_EVENTS = 1000;
+
+    private final Deque<BookChangedEvent> retained = new ArrayDeque<>();
+    private final BlockingQueue<BookChangedEvent> pending = new LinkedBlockingQueue<>();
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private volatile boolean running = true;
+
+    @Value("${books.events.timeout:PT30M}")
+    private Duration timeout;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread sender = new Thread(this::send, "Books_change_feed");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Receives the changes of the store in their order
+     */
+    @EventListener
+    public void onChange(BookChangedEvent event) {
+        synchronized (retained) {
+            retained.addLast(event);
+            if (retained.size() > RETAINED_EVENTS) {
+                retained.removeFirst();
+            }
+        }
+        pending.add(event);
+    }
+
+    @Override
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        Long after = parseSequence(lastEventId);
+        synchronized (subscriber) {
+            List<BookChangedEvent> missed;
+            synchronized (retained) {
+                missed = after == null
+                        ? List.of()
+                        : retained.stream().filter(event -> event.getSequence() > after).toList();
+                subscriber.lastSequence = after != null ? after : retained.isEmpty() ? 0 : retained.getLast().getSequence();
+                subscribers.add(subscriber);
+            }
+            missed.forEach(subscriber::send);
+        }
+        return emitter;
+    }
+
+    private void send() {
+        while (running) {
+            try {
+                BookChangedEvent event = pending.poll(1, TimeUnit.SECONDS);
+                if (event != null) {
+                    subscribers.forEach(subscriber -> subscriber.send(event));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Long parseSequence(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An emitter with the sequence of the last event it was sent, an event is sent at most once
+     */
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private long lastSequence;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private synchronized void send(BookChangedEvent event) {
+            if (event.getSequence() <= lastSequence) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(event.getSequence()))
+                        .name(event.getType())
+                        .data(BookMapper.toDTO(event.getBook()), MediaType.APPLICATION_JSON));
+                lastSequence = event.getSequence();
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+            }
+        }
+    }
+}
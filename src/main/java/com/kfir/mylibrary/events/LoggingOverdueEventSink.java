@@ -0,0 +1,14 @@
+package com.kfir.mylibrary.events;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class LoggingOverdueEventSink implements OverdueEventSink {
+
+    @Override
+    public void publish(OverdueEvent event) {
+        log.info("{} by {} was due in {}", event.getTitle(), event.getAuthor(), event.getDueDate());
+    }
+}
@@ -0,0 +1,437 @@
+package com.kfir.mylibrary.events;
+
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.MongoCatalogueVersions;
+import com.kfir.mylibrary.utils.BookMapper;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server sent events feed of the changes of the books collection, fed by a single mongo change stream shared by all
+ * the subscribers. The id of every event is its change stream resume token, the latest changes are retained so a
+ * subscriber reconnecting with Last-Event-ID catches up on the changes it missed before receiving the new ones.
+ * Changes older than the retained ones are read from the db off the request thread, until the retained ones are
+ * reached. A subscriber that missed more than books.events.catch-up-limit changes gets a resync event instead and
+ * reloads the books.
+ * Every change, whichever instance or stack wrote it, advances the catalogue version and evicts the cached searches
+ * of the book.
+ * The change stream is resumed after its last change when it fails, with a growing pause between the attempts.
+ * Change streams require a replica set, on a standalone server the feed stays silent
+ */
+@Slf4j
+@Component
+@Profile("!embedded")
+public class MongoBookChangeFeed implements BookChangeFeed {
+
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final int REPLICA_SET_REQUIRED = 40573;
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    private static final long WATCH_WAIT_MILLIS = 1000;
+    private static final long CATCH_UP_WAIT_MILLIS = 100;
+    // the fields the searches are cached by, besides the availability
+    private static final Set<String> SEARCHED_FIELDS = Set.of("title", "author", "genre", "branch");
+
+    // guarded by itself, sequence is the local order of the retained changes
+    private final Deque<Change> retained = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private long sequence;
+    private volatile boolean running = true;
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Autowired
+    private MongoCatalogueVersions catalogueVersions;
+
+    @Autowired
+    private BooksCache cache;
+
+    @Value("${books.events.timeout:PT30M}")
+    private Duration timeout;
+
+    @Value("${books.events.retained:1000}")
+    private int retainedEvents;
+
+    @Value("${books.events.catch-up-limit:1000}")
+    private int catchUpLimit;
+
+    private final ExecutorService catchUps;
+
+    public MongoBookChangeFeed(@Value("${books.events.catch-up-threads:4}") int catchUpThreads) {
+        this.catchUps = Executors.newFixedThreadPool(catchUpThreads, runnable -> {
+            Thread thread = new Thread(runnable, "Books_change_feed_catch_up");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread watcher = new Thread(this::watch, "Books_change_feed");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        catchUps.shutdownNow();
+    }
+
+    @Override
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        BsonDocument after = parseToken(lastEventId);
+        if (after == null) {
+            attachAfter(subscriber, currentSequence());
+        } else if (!attach(subscriber, after, false)) {
+            // the changes published while catching up are retained after this sequence
+            long caughtUpFrom = currentSequence();
+            catchUps.execute(() -> catchUp(subscriber, after, caughtUpFrom));
+        }
+        return emitter;
+    }
+
+    /**
+     * Forwards the changes to the subscribers until the application stops, the change stream is resumed after the
+     * last change it returned when it fails
+     */
+    private void watch() {
+        BsonDocument resumeToken = null;
+        Duration backoff = MIN_BACKOFF;
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changes(resumeToken, WATCH_WAIT_MILLIS).cursor()) {
+                backoff = MIN_BACKOFF;
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) {
+                        publish(change);
+                    }
+                    if (cursor.getResumeToken() != null) {
+                        resumeToken = cursor.getResumeToken();
+                    }
+                }
+            } catch (MongoException e) {
+                if (e.getCode() == REPLICA_SET_REQUIRED) {
+                    log.info("Books change feed disabled, change streams require a replica set");
+                    return;
+                }
+                if (e.getCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    // the changes after the token are no longer in the oplog, the feed continues from the latest one
+                    resumeToken = null;
+                }
+                log.warn("Books change feed failed, resuming in {}: {}", backoff, e.getMessage());
+                if (!pause(backoff)) {
+                    return;
+                }
+                backoff = backoff.multipliedBy(2).compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff.multipliedBy(2);
+            }
+        }
+    }
+
+    private void publish(ChangeStreamDocument<Document> change) {
+        refreshCatalogueVersion();
+        evictCachedSearches(change);
+        Change converted = toChange(change, 0);
+        if (converted == null) {
+            return;
+        }
+        Change published;
+        synchronized (retained) {
+            published = new Change(++sequence, converted.token(), converted.type(), converted.book());
+            retained.addLast(published);
+            if (retained.size() > retainedEvents) {
+                retained.removeFirst();
+            }
+        }
+        subscribers.forEach(subscriber -> subscriber.send(published));
+    }
+
+    /**
+     * The change may be written by another instance, the version is read again so that the catalogue etags follow it
+     */
+    private void refreshCatalogueVersion() {
+        try {
+            catalogueVersions.refresh();
+        } catch (RuntimeException e) {
+            log.warn("Unable to refresh the catalogue version: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Method for evicting the cached searches of the changed book, before and after the change. Without the book
+     * before the change (no pre-image recorded) its previous values are known only when the update did not touch the
+     * searched fields, otherwise every cached search is evicted
+     */
+    private void evictCachedSearches(ChangeStreamDocument<Document> change) {
+        OperationType operation = change.getOperationType();
+        if (change.getFullDocumentBeforeChange() != null) {
+            cache.invalidate(template.getConverter().read(Book.class, change.getFullDocumentBeforeChange()));
+        } else if (operation != OperationType.INSERT && !(operation == OperationType.UPDATE && keepsSearchedFields(change))) {
+            cache.invalidateAll();
+            return;
+        }
+        if (change.getFullDocument() != null) {
+            cache.invalidate(template.getConverter().read(Book.class, change.getFullDocument()));
+        }
+    }
+
+    private boolean keepsSearchedFields(ChangeStreamDocument<Document> change) {
+        UpdateDescription update = change.getUpdateDescription();
+        if (update == null || change.getFullDocument() == null) {
+            return false;
+        }
+        boolean removed = update.getRemovedFields() != null && update.getRemovedFields().stream().anyMatch(SEARCHED_FIELDS::contains);
+        boolean updated = update.getUpdatedFields() != null && update.getUpdatedFields().keySet().stream().anyMatch(SEARCHED_FIELDS::contains);
+        return !removed && !updated;
+    }
+
+    /**
+     * Method for subscribing after a retained change, the retained changes following it are sent first
+     *
+     * @param token     - resume token of the change
+     * @param including - true to send the change itself too
+     * @return false in case the change is not retained, the subscriber is not subscribed
+     */
+    private boolean attach(Subscriber subscriber, BsonDocument token, boolean including) {
+        List<Change> missed;
+        synchronized (retained) {
+            Change found = retained.stream().filter(change -> change.token().equals(token)).findFirst().orElse(null);
+            if (found == null) {
+                return false;
+            }
+            long after = including ? found.sequence() - 1 : found.sequence();
+            missed = retained.stream().filter(change -> change.sequence() > after).toList();
+            subscriber.lastSequence = after;
+            subscribers.add(subscriber);
+        }
+        missed.forEach(subscriber::send);
+        return true;
+    }
+
+    /**
+     * Method for subscribing after a sequence, the retained changes following it are sent first
+     */
+    private void attachAfter(Subscriber subscriber, long after) {
+        List<Change> missed;
+        synchronized (retained) {
+            missed = retained.stream().filter(change -> change.sequence() > after).toList();
+            subscriber.lastSequence = after;
+            subscribers.add(subscriber);
+        }
+        missed.forEach(subscriber::send);
+    }
+
+    private long currentSequence() {
+        synchronized (retained) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Method for sending the changes after a change that is not retained, read from the db until a retained change
+     * is reached or there are no more changes, then subscribing after the sequence the catch up started from. The
+     * changes sent here are not sent again once they are retained. More than books.events.catch-up-limit missed
+     * changes are not sent, the subscriber gets a resync event instead
+     *
+     * @param after        - the last change the subscriber received
+     * @param caughtUpFrom - sequence of the last retained change when the catch up started
+     */
+    private void catchUp(Subscriber subscriber, BsonDocument after, long caughtUpFrom) {
+        subscriber.replayed.add(after);
+        int sent = 0;
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changes(after, CATCH_UP_WAIT_MILLIS).cursor()) {
+            ChangeStreamDocument<Document> change;
+            while ((change = cursor.tryNext()) != null) {
+                if (attach(subscriber, change.getResumeToken(), true)) {
+                    return;
+                }
+                if (sent++ == catchUpLimit) {
+                    subscriber.resync(change.getResumeToken());
+                    break;
+                }
+                Change missed = toChange(change, 0);
+                if (missed != null) {
+                    subscriber.replay(missed);
+                }
+            }
+        } catch (MongoException e) {
+            log.warn("Unable to replay the books changes after {}: {}", after.toJson(), e.getMessage());
+        }
+        attachAfter(subscriber, caughtUpFrom);
+    }
+
+    private ChangeStreamIterable<Document> changes(BsonDocument after, long maxAwaitMillis) {
+        ChangeStreamIterable<Document> changes = template.getCollection(template.getCollectionName(Book.class))
+                .watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+                .maxAwaitTime(maxAwaitMillis, TimeUnit.MILLISECONDS);
+        return after == null ? changes : changes.resumeAfter(after);
+    }
+
+    /**
+     * @return the change as sent to the subscribers, null for a change without a book
+     */
+    private Change toChange(ChangeStreamDocument<Document> change, long changeSequence) {
+        BookDTO bookDTO;
+        if (change.getFullDocument() != null) {
+            bookDTO = BookMapper.toDTO(template.getConverter().read(Book.class, change.getFullDocument()));
+        } else if (change.getDocumentKey() != null) {
+            bookDTO = new BookDTO();
+            BsonValue id = change.getDocumentKey().get("_id");
+            bookDTO.setId(id.asBinary().asUuid());
+        } else {
+            return null;
+        }
+        return new Change(changeSequence, change.getResumeToken(), eventType(change), bookDTO);
+    }
+
+    /**
+     * A replace, written by save and by the write-behind flush, carries the whole book rather than the changed fields,
+     * its availability is compared with the book before the change, available when the collection records pre-images
+     *
+     * @return create, borrow, return, update or delete
+     */
+    private String eventType(ChangeStreamDocument<Document> change) {
+        OperationType operation = change.getOperationType();
+        if (operation == OperationType.INSERT) {
+            return "create";
+        }
+        if (operation == OperationType.DELETE) {
+            return "delete";
+        }
+        if (operation == OperationType.UPDATE && change.getUpdateDescription() != null
+                && change.getUpdateDescription().getUpdatedFields() != null
+                && change.getUpdateDescription().getUpdatedFields().containsKey("isAvailable")) {
+            return change.getUpdateDescription().getUpdatedFields().getBoolean("isAvailable").getValue() ? "return" : "borrow";
+        }
+        if (operation == OperationType.REPLACE && change.getFullDocument() != null && change.getFullDocumentBeforeChange() != null) {
+            boolean available = change.getFullDocument().getBoolean("isAvailable", false);
+            if (available != change.getFullDocumentBeforeChange().getBoolean("isAvailable", false)) {
+                return available ? "return" : "borrow";
+            }
+        }
+        return "update";
+    }
+
+    private BsonDocument parseToken(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        try {
+            return BsonDocument.parse(lastEventId);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private boolean pause(Duration backoff) {
+        try {
+            Thread.sleep(backoff.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * A change as sent to the subscribers, sequence is its local order, 0 for a change read by a catch up
+     */
+    private record Change(long sequence, BsonDocument token, String type, BookDTO book) {
+    }
+
+    /**
+     * An emitter with the sequence of the last retained change it was sent, a change is sent at most once
+     */
+    private class Subscriber {
+        private final SseEmitter emitter;
+        // resume tokens of the changes sent by a catch up, skipped when the shared change stream returns them
+        private final Set<BsonDocument> replayed = new HashSet<>();
+        private long lastSequence;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private synchronized void send(Change change) {
+            if (change.sequence() <= lastSequence) {
+                return;
+            }
+            lastSequence = change.sequence();
+            if (!replayed.remove(change.token())) {
+                deliver(change);
+            }
+        }
+
+        private synchronized void replay(Change change) {
+            replayed.add(change.token());
+            deliver(change);
+        }
+
+        /**
+         * Tells the subscriber it missed too many changes to be sent, it reloads the books and continues after the
+         * token
+         */
+        private synchronized void resync(BsonDocument token) {
+            try {
+                emitter.send(SseEmitter.event().id(token.toJson()).name("resync").data("reload the books"));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+            }
+        }
+
+        private void deliver(Change change) {
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(change.token().toJson())
+                        .name(change.type())
+                        .data(change.book(), MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+            }
+        }
+    }
+}
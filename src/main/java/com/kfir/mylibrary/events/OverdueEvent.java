@@ -0,0 +1,19 @@
+package com.kfir.mylibrary.events;
+
+import lombok.Value;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Published once for every book that became overdue
+ */
+@Value
+public class OverdueEvent {
+
+    UUID bookId;
+    String title;
+    String author;
+    LocalDate borrowedDate;
+    LocalDate dueDate;
+}
@@ -0,0 +1,9 @@
+package com.kfir.mylibrary.events;
+
+/**
+ * Destination of the overdue events, every sink bean receives every event
+ */
+public interface OverdueEventSink {
+
+    void publish(OverdueEvent event);
+}
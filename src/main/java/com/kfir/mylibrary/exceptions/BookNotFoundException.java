@@ -2,6 +2,6 @@ package com.kfir.mylibrary.exceptions;
 
 public class BookNotFoundException extends RuntimeException {
     public BookNotFoundException(String errorMessage) {
-        super(errorMessage);
+        super(errorMessage, null, false, false);
     }
 }
@@ -2,6 +2,6 @@ package com.kfir.mylibrary.exceptions;
 
 public class EmptyResultsException extends RuntimeException {
     public EmptyResultsException(String errorMessage) {
-        super(errorMessage);
+        super(errorMessage, null, false, false);
     }
 }
@@ -2,6 +2,6 @@ package com.kfir.mylibrary.exceptions;
 
 public class InvalidDataException extends RuntimeException {
     public InvalidDataException(String errorMessage) {
-        super(errorMessage);
+        super(errorMessage, null, false, false);
     }
 }
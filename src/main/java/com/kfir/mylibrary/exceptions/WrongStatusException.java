@@ -6,6 +6,6 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 @ResponseStatus(code = HttpStatus.CONFLICT, reason = "Book is in the opposite status")
 public class WrongStatusException extends RuntimeException {
     public WrongStatusException(String errorMessage) {
-        super(errorMessage);
+        super(errorMessage, null, false, false);
     }
 }
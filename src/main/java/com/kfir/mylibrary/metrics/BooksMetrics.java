@@ -0,0 +1,43 @@
+package com.kfir.mylibrary.metrics;
+
+import com.kfir.mylibrary.repositories.BooksRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gauges of the available and borrowed books. The counts are refreshed in the background
+ * (books.metrics.refresh-interval) so a scrape never queries the db
+ */
+@Component
+public class BooksMetrics implements MeterBinder {
+
+    private final AtomicLong available = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+
+    @Autowired
+    private BooksRepository repo;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("books.count", available, AtomicLong::get)
+                .tag("status", "available")
+                .description("Number of available books")
+                .register(registry);
+        Gauge.builder("books.count", borrowed, AtomicLong::get)
+                .tag("status", "borrowed")
+                .description("Number of borrowed books")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${books.metrics.refresh-interval:PT30S}")
+    public void refreshCounts() {
+        available.set(repo.countByIsAvailable(true));
+        borrowed.set(repo.countByIsAvailable(false));
+    }
+}
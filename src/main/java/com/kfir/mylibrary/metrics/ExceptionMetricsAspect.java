@@ -0,0 +1,33 @@
+package com.kfir.mylibrary.metrics;
+
+import com.kfir.mylibrary.services.BookResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.AfterThrowing;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the exceptions thrown by the services, tagged by the exception type (InvalidDataException,
+ * WrongStatusException, ...), and the failed results they return, tagged by the outcome (EMPTY, NOT_FOUND, CONFLICT)
+ */
+@Aspect
+@Component
+public class ExceptionMetricsAspect {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @AfterThrowing(pointcut = "execution(* com.kfir.mylibrary.services.BooksService.*(..))", throwing = "e")
+    public void countException(RuntimeException e) {
+        registry.counter("books.exceptions", "exception", e.getClass().getSimpleName()).increment();
+    }
+
+    @AfterReturning(pointcut = "execution(* com.kfir.mylibrary.services.BooksService.*(..))", returning = "result")
+    public void countFailedResult(BookResult<?> result) {
+        if (!result.isOk()) {
+            registry.counter("books.failed.results", "outcome", result.getOutcome().name()).increment();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position of the last book returned in a page, books are ordered by title and then by id
+ */
+@Value
+public class BookCursor {
+
+    private static final char SEPARATOR = '\n';
+
+    String title;
+    UUID id;
+
+    public static BookCursor of(Book book) {
+        return new BookCursor(book.getTitle(), book.getId());
+    }
+
+    /**
+     * Method for encoding the cursor into an opaque url safe token
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = id.toString() + SEPARATOR + title;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method for decoding a token created by {@link #encode()}
+     *
+     * @param token - the encoded cursor
+     * @return the decoded cursor
+     * @throws InvalidDataException is thrown in case the token is malformed
+     */
+    public static BookCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            return new BookCursor(raw.substring(separator + 1), UUID.fromString(raw.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidDataException("Invalid cursor, unable to continue the search");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sparse fieldset of a list response - which fields of the book dto are returned, always in the order of the dto.
+ * Lists are fetched with a projection of these fields (see {@link BookFilter#fetching}), the other fields are
+ * neither sent by the db nor decoded
+ */
+@Getter
+@EqualsAndHashCode(of = "names")
+public final class BookFields {
+
+    public static final List<String> NAMES = List.of("id", "branch", "title", "author", "genre", "dueDate", "borrowedDate");
+
+    private static final BookFields ALL = new BookFields(NAMES);
+
+    private final List<String> names;
+    private final Set<String> included;
+
+    private BookFields(List<String> names) {
+        this.names = names;
+        this.included = Set.copyOf(names);
+    }
+
+    /**
+     * @return all the fields of the book dto
+     */
+    public static BookFields all() {
+        return ALL;
+    }
+
+    /**
+     * Method for parsing the fields query parameter
+     *
+     * @param fields - comma separated names of dto fields, null or blank for all the fields
+     * @return the fieldset
+     * @throws InvalidDataException is thrown in case a field is unknown or no field is named, like fields=,,
+     */
+    public static BookFields parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<String> requested = new HashSet<>();
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!NAMES.contains(trimmed)) {
+                throw new InvalidDataException("Invalid data, unknown field '" + trimmed + "', the fields are " + String.join(",", NAMES));
+            }
+            requested.add(trimmed);
+        }
+        if (requested.isEmpty()) {
+            throw new InvalidDataException("Invalid data, no field requested, the fields are " + String.join(",", NAMES));
+        }
+        return requested.size() == NAMES.size() ? ALL : new BookFields(NAMES.stream().filter(requested::contains).toList());
+    }
+
+    public boolean includes(String name) {
+        return included.contains(name);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", names);
+    }
+}
@@ -0,0 +1,190 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Describes which books a paged or streamed search should return, and optionally which of their fields.
+ * A filter scoped to a branch matches only the books of that branch, otherwise the books of all branches
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookFilter {
+
+    private final String field;
+    private final Object value;
+    private final boolean before;
+    private final Object from;
+    // books changed since are matched too, whatever their place in the from range
+    private final Instant changedSince;
+    private final String branch;
+    // fields to fetch, null for the whole documents
+    private final BookFields fields;
+
+    public static BookFilter all() {
+        return new BookFilter(null, null, false, null, null, null, null);
+    }
+
+    public static BookFilter byTitle(String title) {
+        return new BookFilter("title", title, false, null, null, null, null);
+    }
+
+    public static BookFilter byAuthor(String author) {
+        return new BookFilter("author", author, false, null, null, null, null);
+    }
+
+    public static BookFilter byGenre(String genre) {
+        return new BookFilter("genre", genre, false, null, null, null, null);
+    }
+
+    public static BookFilter byIsAvailable(boolean isAvailable) {
+        return new BookFilter("isAvailable", isAvailable, false, null, null, null, null);
+    }
+
+    public static BookFilter byDueDateIsBefore(LocalDate date) {
+        return new BookFilter("dueDate", date, true, null, null, null, null);
+    }
+
+    /**
+     * @param from  - first due date to include
+     * @param until - first due date to exclude
+     * @return filter of the borrowed books that became due in the range
+     */
+    public static BookFilter byDueDateBetween(LocalDate from, LocalDate until) {
+        return new BookFilter("dueDate", until, true, from, null, null, null);
+    }
+
+    /**
+     * @param since - books changed since are matched too, like a book whose due date was edited to before the range.
+     *              null to match only the range
+     * @return the same filter also matching the books changed since
+     */
+    public BookFilter orChangedSince(Instant since) {
+        return new BookFilter(field, value, before, from, since, branch, fields);
+    }
+
+    /**
+     * @param branch - the branch to search, null for all branches
+     * @return the same filter scoped to the branch
+     */
+    public BookFilter inBranch(String branch) {
+        return new BookFilter(field, value, before, from, changedSince, branch, fields);
+    }
+
+    /**
+     * @param fields - the fields to fetch
+     * @return the same filter fetching only the fields
+     */
+    public BookFilter fetching(BookFields fields) {
+        return new BookFilter(field, value, before, from, changedSince, branch, fields);
+    }
+
+    /**
+     * Method for limiting the fields fetched by a query of the filter to the fields of the filter. The loan dates
+     * of available books are always null, they are not fetched when the filter matches only available books
+     *
+     * @param query    - query of the filter
+     * @param required - fields needed besides the fetched ones, like the ordering fields of a page
+     * @return the query
+     */
+    public Query project(Query query, String... required) {
+        if (fields == null) {
+            return query;
+        }
+        boolean availableOnly = "isAvailable".equals(field) && Boolean.TRUE.equals(value);
+        Field projection = query.fields();
+        for (String name : fields.getNames()) {
+            if (!(availableOnly && (name.equals("dueDate") || name.equals("borrowedDate")))) {
+                projection.include(name);
+            }
+        }
+        for (String name : required) {
+            projection.include(name);
+        }
+        return query;
+    }
+
+    /**
+     * Method for translating the filter to a mongo criteria
+     *
+     * @return the matching criteria, an empty criteria when the filter matches all books
+     */
+    public Criteria toCriteria() {
+        // the branch comes first, like in the branch indexes and the shard key
+        Criteria criteria = branch == null ? new Criteria() : Criteria.where("branch").is(branch);
+        if (field == null) {
+            return criteria;
+        }
+        if (before) {
+            // only borrowed books have a due date, matches the partial dueDate index
+            if (from != null && changedSince != null) {
+                // one branch per index: the due date range, and the changed books
+                return criteria.orOperator(
+                        Criteria.where("isAvailable").is(false).and(field).lt(value).gte(from),
+                        Criteria.where("isAvailable").is(false).and(field).lt(value).and("lastModified").gte(changedSince));
+            }
+            criteria = criteria.and("isAvailable").is(false).and(field).lt(value);
+            return from == null ? criteria : criteria.gte(from);
+        }
+        return criteria.and(field).is(value);
+    }
+
+    /**
+     * Method for evaluating the filter on a book, the in-memory counterpart of {@link #toCriteria()}
+     *
+     * @param book - the book to check
+     * @return true in case the book matches the filter
+     */
+    public boolean matches(Book book) {
+        if (branch != null && !branch.equals(book.getBranch())) {
+            return false;
+        }
+        if (field == null) {
+            return true;
+        }
+        if (before) {
+            LocalDate dueDate = book.getDueDate();
+            return !book.isAvailable() && dueDate != null && dueDate.isBefore((LocalDate) value)
+                    && (from == null || !dueDate.isBefore((LocalDate) from) || changedSince(book));
+        }
+        return Objects.equals(value, property(book, field));
+    }
+
+    private boolean changedSince(Book book) {
+        return changedSince != null && book.getLastModified() != null && !book.getLastModified().isBefore(changedSince);
+    }
+
+    /**
+     * Method for reading a searchable property of a book by its stored name
+     *
+     * @param book - the book to read
+     * @param name - name of the property
+     * @return the value of the property
+     * @throws IllegalArgumentException is thrown in case the property is unknown
+     */
+    static Object property(Book book, String name) {
+        return switch (name) {
+            case "id" -> book.getId();
+            case "branch" -> book.getBranch();
+            case "title" -> book.getTitle();
+            case "author" -> book.getAuthor();
+            case "genre" -> book.getGenre();
+            case "dueDate" -> book.getDueDate();
+            case "borrowedDate" -> book.getBorrowedDate();
+            case "isAvailable" -> book.isAvailable();
+            case "lastModified" -> book.getLastModified();
+            default -> throw new IllegalArgumentException(String.format("Unknown book property '%s'", name));
+        };
+    }
+}
@@ -0,0 +1,229 @@
+package com.kfir.mylibrary.repositories;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kfir.mylibrary.entities.Book;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Durable storage of the embedded store. Every change is appended to books.log as one json line before it is
+ * applied, the log is compacted by writing all the books to books.snapshot and starting a new log.
+ * On startup the snapshot is loaded and the changes logged after it are replayed, a line torn by a crash is ignored
+ */
+@Slf4j
+class BookLog implements Closeable {
+
+    private static final String SNAPSHOT = "books.snapshot";
+    private static final String LOG = "books.log";
+    private static final String ROTATED_LOG = "books.log.old";
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Path directory;
+    private final boolean syncWrites;
+    private FileChannel channel;
+    private boolean appended;
+    private long size;
+
+    /**
+     * @param directory  - directory of the snapshot and the log
+     * @param syncWrites - true to force every append to the disk, otherwise a change survives a crash of the
+     *                   process but not of the machine
+     */
+    BookLog(Path directory, boolean syncWrites) {
+        this.directory = directory;
+        this.syncWrites = syncWrites;
+    }
+
+    /**
+     * Method for loading the stored books, the loaded state is compacted into a new snapshot so the log starts empty
+     *
+     * @param books - filled with the stored books by id
+     * @return sequence of the last stored change, 0 for an empty store
+     * @throws IOException is thrown in case the store can not be read
+     */
+    long load(Map<UUID, Book> books) throws IOException {
+        Files.createDirectories(directory);
+        long sequence = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+                sequence = mapper.readTree(reader.readLine()).get("sequence").asLong();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Book book = mapper.readValue(line, Book.class);
+                    books.put(book.getId(), book);
+                }
+            }
+        }
+        Path log = directory.resolve(LOG);
+        Path rotated = directory.resolve(ROTATED_LOG);
+        sequence = replay(rotated, sequence, books);
+        sequence = replay(log, sequence, books);
+        if (Files.exists(rotated) || Files.exists(log)) {
+            writeSnapshot(books.values(), sequence);
+            Files.deleteIfExists(log);
+        }
+        channel = open(log);
+        return sequence;
+    }
+
+    /**
+     * Method for appending changes to the log, the changes are written together
+     *
+     * @param records - the changes in their order
+     * @throws UncheckedIOException is thrown in case the log can not be written, the changes must not be applied
+     */
+    void append(List<Record> records) {
+        try {
+            StringBuilder lines = new StringBuilder();
+            for (Record record : records) {
+                lines.append(mapper.writeValueAsString(record)).append('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer);
+            }
+            if (syncWrites) {
+                channel.force(false);
+            }
+            appended = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to the books log", e);
+        }
+    }
+
+    /**
+     * Method for starting a new log before a snapshot, must be called while no change is appended.
+     * The rotated log is kept until {@link #writeSnapshot} succeeds
+     *
+     * @return false in case nothing was appended since the previous snapshot
+     * @throws IOException is thrown in case the log can not be rotated
+     */
+    boolean rotate() throws IOException {
+        if (!appended) {
+            return false;
+        }
+        Path log = directory.resolve(LOG);
+        Path rotated = directory.resolve(ROTATED_LOG);
+        channel.close();
+        try {
+            if (Files.exists(rotated)) {
+                // the previous snapshot failed, its changes are still needed
+                Files.write(rotated, Files.readAllBytes(log), StandardOpenOption.APPEND);
+                Files.delete(log);
+            } else {
+                Files.move(log, rotated, StandardCopyOption.ATOMIC_MOVE);
+            }
+            appended = false;
+            size = 0;
+        } finally {
+            channel = open(log);
+        }
+        return true;
+    }
+
+    /**
+     * Method for replacing the snapshot, the books must include every change up to the sequence
+     *
+     * @param books    - all the books
+     * @param sequence - sequence of the last change included
+     * @throws IOException is thrown in case the snapshot can not be written, the previous one is kept
+     */
+    void writeSnapshot(Collection<Book> books, long sequence) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Writer writer = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8))) {
+            writer.write(mapper.writeValueAsString(Map.of("sequence", sequence)));
+            writer.write('\n');
+            for (Book book : books) {
+                writer.write(mapper.writeValueAsString(book));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(directory.resolve(ROTATED_LOG));
+    }
+
+    /**
+     * @return number of bytes appended to the log since the last rotation
+     */
+    long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long replay(Path path, long sequence, Map<UUID, Book> books) throws IOException {
+        if (!Files.exists(path)) {
+            return sequence;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record;
+                try {
+                    record = mapper.readValue(line, Record.class);
+                } catch (JsonProcessingException e) {
+                    log.warn("Ignoring the torn end of {}", path);
+                    break;
+                }
+                if (record.getSequence() <= sequence) {
+                    continue;
+                }
+                if (record.getBook() == null) {
+                    books.remove(record.getId());
+                } else {
+                    books.put(record.getId(), record.getBook());
+                }
+                sequence = record.getSequence();
+            }
+        }
+        return sequence;
+    }
+
+    private FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * One change of the log, a record without a book deletes the book
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Record {
+        private long sequence;
+        private UUID id;
+        private Book book;
+    }
+}
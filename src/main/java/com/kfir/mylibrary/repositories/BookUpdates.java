@@ -0,0 +1,73 @@
+package com.kfir.mylibrary.repositories;
+
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * The conditional availability updates, shared by the blocking and the reactive repositories
+ */
+final class BookUpdates {
+
+    static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+
+    // token of the last batch update of a book, not mapped on the entity
+    private static final String BATCH = "lastBatch";
+
+    /**
+     * Hide from public usage.
+     */
+    private BookUpdates() {
+    }
+
+    /**
+     * @param branch - the branch of the book, null when it is not known. With the branch the query holds the whole
+     *               shard key, which findAndModify on a sharded collection needs before mongo 7.1
+     */
+    static Query withAvailability(UUID id, String branch, boolean isAvailable) {
+        Criteria criteria = branch == null ? Criteria.where("id").is(id) : Criteria.where("branch").is(branch).and("id").is(id);
+        return Query.query(criteria.and("isAvailable").is(isAvailable));
+    }
+
+    static Query withAvailability(Collection<UUID> ids, boolean isAvailable) {
+        return Query.query(Criteria.where("id").in(ids).and("isAvailable").is(isAvailable));
+    }
+
+    /**
+     * @param update - update of a batch of books
+     * @param batch  - token unique to the batch, written to the books the update changes
+     * @return the update also marking the changed books with the token
+     */
+    static Update marked(Update update, UUID batch) {
+        return update.set(BATCH, batch);
+    }
+
+    /**
+     * @return query of the books of ids marked with the token of the batch, the books the batch update changed
+     */
+    static Query markedBy(Collection<UUID> ids, UUID batch) {
+        return Query.query(Criteria.where("id").in(ids).and(BATCH).is(batch));
+    }
+
+    static Update borrow(LocalDate borrowedDate, LocalDate dueDate, Instant lastModified) {
+        return new Update()
+                .set("isAvailable", false)
+                .set("borrowedDate", borrowedDate)
+                .set("dueDate", dueDate)
+                .set("lastModified", lastModified);
+    }
+
+    static Update giveBack(Instant lastModified) {
+        return new Update()
+                .set("isAvailable", true)
+                .unset("borrowedDate")
+                .unset("dueDate")
+                .set("lastModified", lastModified);
+    }
+}
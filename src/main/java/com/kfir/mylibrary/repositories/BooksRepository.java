@@ -1,13 +1,32 @@
 package com.kfir.mylibrary.repositories;
 
 import com.kfir.mylibrary.entities.Book;
-import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.ListPagingAndSortingRepository;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
 
-public interface BooksRepository extends MongoRepository<Book, UUID> {
+/**
+ * The books store, backed by mongo or by the embedded store. The crud, paging and insert methods of MongoRepository
+ * without its query by example, which the embedded store does not implement
+ */
+public interface BooksRepository extends ListCrudRepository<Book, UUID>, ListPagingAndSortingRepository<Book, UUID>,
+        BooksRepositoryCustom {
+
+    /**
+     * @param entity - the book to insert, fails in case a book with its id exists
+     * @return the inserted book
+     */
+    <S extends Book> S insert(S entity);
+
+    /**
+     * @param entities - the books to insert, fails in case a book with one of their ids exists
+     * @return the inserted books
+     */
+    <S extends Book> List<S> insert(Iterable<S> entities);
 
     List<Book> findAllByTitle(String title);
 
@@ -17,6 +36,12 @@ public interface BooksRepository extends MongoRepository<Book, UUID> {
 
     List<Book> findAllByIsAvailable(boolean isAvailable);
 
+    long countByIsAvailable(boolean isAvailable);
+
+    /**
+     * Only borrowed books are overdue, the availability condition lets the partial dueDate index serve the query
+     */
+    @Query("{ 'isAvailable': false, 'dueDate': { $lt: ?0 } }")
     List<Book> findAllByDueDateIsBefore(LocalDate today);
 
 }
@@ -0,0 +1,109 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import org.springframework.data.domain.Slice;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public interface BooksRepositoryCustom {
+
+    /**
+     * Method for fetching one page of books ordered by title and id, using keyset pagination.
+     * Like the other finders of a filter only the fields of the filter are fetched, when it has fields
+     *
+     * @param filter - which books to return
+     * @param after  - position of the last book of the previous page, null for the first page
+     * @param size   - maximal number of books in the page
+     * @return slice of the books following the cursor
+     */
+    Slice<Book> findSlice(BookFilter filter, BookCursor after, int size);
+
+    /**
+     * Method for streaming books ordered by title and id directly from the db cursor.
+     * The returned stream must be closed by the caller
+     *
+     * @param filter - which books to return
+     * @return stream of the matching books
+     */
+    Stream<Book> streamAll(BookFilter filter);
+
+    /**
+     * Method for finding all the books of a filter ordered by title and id
+     *
+     * @param filter - which books to return
+     * @return list of the matching books
+     */
+    List<Book> findAllMatching(BookFilter filter);
+
+    /**
+     * Method for atomically borrowing a book, the book is changed only if it is currently available
+     *
+     * @param id           - id of the book to borrow
+     * @param branch       - the branch of the book, null when it is not known
+     * @param borrowedDate - the date the book is borrowed
+     * @param dueDate      - the date the book should be returned
+     * @return the borrowed book, empty if the book does not exist (in the branch) or is not available
+     */
+    Optional<Book> borrowIfAvailable(UUID id, String branch, LocalDate borrowedDate, LocalDate dueDate);
+
+    /**
+     * Method for atomically returning a book, the book is changed only if it is currently unavailable
+     *
+     * @param id     - id of the book to return
+     * @param branch - the branch of the book, null when it is not known
+     * @return the returned book, empty if the book does not exist (in the branch) or is already available
+     */
+    Optional<Book> returnIfUnavailable(UUID id, String branch);
+
+    /**
+     * Method for borrowing many books, every book is borrowed by its own conditional update so only the books
+     * available at the time of their update are changed
+     *
+     * @param ids          - ids of the books to borrow
+     * @param borrowedDate - the date the books are borrowed
+     * @param dueDate      - the date the books should be returned
+     * @param lastModified - modification time written to the changed books
+     * @return the books borrowed by this call, a book missing from it was not found or not available
+     */
+    List<Book> borrowAllIfAvailable(Collection<UUID> ids, LocalDate borrowedDate, LocalDate dueDate, Instant lastModified);
+
+    /**
+     * Method for returning many books, every book is returned by its own conditional update so only the books
+     * unavailable at the time of their update are changed
+     *
+     * @param ids          - ids of the books to return
+     * @param lastModified - modification time written to the changed books
+     * @return the books returned by this call, a book missing from it was not found or already available
+     */
+    List<Book> returnAllIfUnavailable(Collection<UUID> ids, Instant lastModified);
+
+    /**
+     * Method for inserting many books in one unordered bulk write, a failing book does not stop the others
+     *
+     * @param books - the books to insert
+     * @return the error message of every book that was not inserted, by its index in books
+     */
+    Map<Integer, String> insertAll(List<Book> books);
+
+    /**
+     * Method for counting the books by genre, author and availability and the borrowed books by due date,
+     * in one aggregation over the whole collection
+     *
+     * @return the counts of every facet
+     */
+    CatalogueCounts aggregateCounts();
+
+    /**
+     * Method for counting the borrowed books by due date, reads only the borrowed books
+     *
+     * @return the borrowed books and the sum of their loan durations by due date
+     */
+    List<CatalogueCounts.LoanCount> aggregateLoans();
+}
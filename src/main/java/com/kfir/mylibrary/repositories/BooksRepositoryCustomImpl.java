@@ -0,0 +1,153 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.UpdateResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.aggregation.MatchOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public class BooksRepositoryCustomImpl implements BooksRepositoryCustom {
+
+    private static final Sort TITLE_ORDER = Sort.by(Sort.Direction.ASC, "title", "id");
+
+    private static final MatchOperation BORROWED = Aggregation.match(
+            Criteria.where("isAvailable").is(false).and("dueDate").ne(null).and("borrowedDate").ne(null));
+    private static final GroupOperation LOANS_BY_DUE_DATE = Aggregation.group("dueDate").count().as("count")
+            .sum(ArithmeticOperators.Subtract.valueOf("dueDate").subtract("borrowedDate")).as("loanMillis");
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Autowired
+    private ReadRouting reads;
+
+    @Override
+    public Slice<Book> findSlice(BookFilter filter, BookCursor after, int size) {
+        Criteria criteria = filter.toCriteria();
+        if (after != null) {
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                    Criteria.where("title").gt(after.getTitle()),
+                    Criteria.where("title").is(after.getTitle()).and("id").gt(after.getId())));
+        }
+        Query query = filter.project(Query.query(criteria).with(TITLE_ORDER).limit(size + 1), "title");
+
+        List<Book> books = reads.operations().find(query, Book.class);
+        boolean hasNext = books.size() > size;
+        if (hasNext) {
+            books = books.subList(0, size);
+        }
+        return new SliceImpl<>(books, PageRequest.of(0, size, TITLE_ORDER), hasNext);
+    }
+
+    @Override
+    public Stream<Book> streamAll(BookFilter filter) {
+        Query query = filter.project(Query.query(filter.toCriteria()).with(TITLE_ORDER));
+        return reads.operations().stream(query, Book.class);
+    }
+
+    @Override
+    public List<Book> findAllMatching(BookFilter filter) {
+        return reads.operations().find(filter.project(Query.query(filter.toCriteria()).with(TITLE_ORDER)), Book.class);
+    }
+
+    @Override
+    public Optional<Book> borrowIfAvailable(UUID id, String branch, LocalDate borrowedDate, LocalDate dueDate) {
+        return Optional.ofNullable(template.findAndModify(BookUpdates.withAvailability(id, branch, true),
+                BookUpdates.borrow(borrowedDate, dueDate, Instant.now()), BookUpdates.RETURN_NEW, Book.class));
+    }
+
+    @Override
+    public Optional<Book> returnIfUnavailable(UUID id, String branch) {
+        return Optional.ofNullable(template.findAndModify(BookUpdates.withAvailability(id, branch, false),
+                BookUpdates.giveBack(Instant.now()), BookUpdates.RETURN_NEW, Book.class));
+    }
+
+    @Override
+    public List<Book> borrowAllIfAvailable(Collection<UUID> ids, LocalDate borrowedDate, LocalDate dueDate, Instant lastModified) {
+        return updateAll(ids, true, BookUpdates.borrow(borrowedDate, dueDate, lastModified));
+    }
+
+    @Override
+    public List<Book> returnAllIfUnavailable(Collection<UUID> ids, Instant lastModified) {
+        return updateAll(ids, false, BookUpdates.giveBack(lastModified));
+    }
+
+    /**
+     * Method for changing the availability of a batch of books with one conditional update, the books it changed are
+     * marked with a token unique to the batch and read back by it: a concurrent batch marks its own books with
+     * another token, so each book is returned to the one batch that changed it
+     *
+     * @param ids         - ids of the books to change
+     * @param isAvailable - availability the books must have to be changed
+     * @param update      - the change
+     * @return the changed books
+     */
+    private List<Book> updateAll(Collection<UUID> ids, boolean isAvailable, Update update) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        UUID batch = UUID.randomUUID();
+        UpdateResult result = template.updateMulti(BookUpdates.withAvailability(ids, isAvailable),
+                BookUpdates.marked(update, batch), Book.class);
+        if (result.getModifiedCount() == 0) {
+            return List.of();
+        }
+        return template.find(BookUpdates.markedBy(ids, batch), Book.class);
+    }
+
+    @Override
+    public Map<Integer, String> insertAll(List<Book> books) {
+        Map<Integer, String> errors = new HashMap<>();
+        if (books.isEmpty()) {
+            return errors;
+        }
+        try {
+            template.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class).insert(books).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                errors.put(error.getIndex(), error.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public CatalogueCounts aggregateCounts() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.facet(Aggregation.group("genre").count().as("count")).as("byGenre")
+                        .and(Aggregation.group("author").count().as("count")).as("byAuthor")
+                        .and(Aggregation.group("isAvailable").count().as("count")).as("byAvailability")
+                        .and(BORROWED, LOANS_BY_DUE_DATE).as("loans"));
+        CatalogueCounts counts = template.aggregate(aggregation, Book.class, CatalogueCounts.class).getUniqueMappedResult();
+        return counts != null ? counts : new CatalogueCounts();
+    }
+
+    @Override
+    public List<CatalogueCounts.LoanCount> aggregateLoans() {
+        Aggregation aggregation = Aggregation.newAggregation(BORROWED, LOANS_BY_DUE_DATE);
+        return template.aggregate(aggregation, Book.class, CatalogueCounts.LoanCount.class).getMappedResults();
+    }
+}
@@ -0,0 +1,41 @@
+package com.kfir.mylibrary.repositories;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of the statistics aggregation, one list per facet of the pipeline
+ */
+@Data
+public class CatalogueCounts {
+
+    private List<KeyCount> byGenre = new ArrayList<>();
+    private List<KeyCount> byAuthor = new ArrayList<>();
+    private List<AvailabilityCount> byAvailability = new ArrayList<>();
+    private List<LoanCount> loans = new ArrayList<>();
+
+    @Data
+    public static class KeyCount {
+        private String id;
+        private long count;
+    }
+
+    @Data
+    public static class AvailabilityCount {
+        private boolean id;
+        private long count;
+    }
+
+    /**
+     * The borrowed books due on one date, with the sum of their loan durations
+     */
+    @Data
+    public static class LoanCount {
+        private LocalDate id;
+        private long count;
+        private long loanMillis;
+    }
+}
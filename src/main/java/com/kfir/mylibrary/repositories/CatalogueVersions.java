@@ -0,0 +1,22 @@
+package com.kfir.mylibrary.repositories;
+
+/**
+ * Version of the books collection, changes whenever any book changes
+ */
+public interface CatalogueVersions {
+
+    /**
+     * @return the version of the books collection the reads of the calling request reflect, 0 before the first change
+     */
+    long current();
+
+    /**
+     * @return false while a change may not have reached every read yet, results read meanwhile must not be kept
+     */
+    boolean settled();
+
+    /**
+     * Method for advancing the version, must be called after the change is written
+     */
+    void advance();
+}
@@ -0,0 +1,32 @@
+package com.kfir.mylibrary.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Version of the embedded store, the sequence of its last change
+ */
+@Repository
+@Profile("embedded")
+public class EmbeddedCatalogueVersions implements CatalogueVersions {
+
+    @Autowired
+    private InMemoryBooksRepository store;
+
+    @Override
+    public long current() {
+        return store.sequence();
+    }
+
+    @Override
+    public boolean settled() {
+        // every read is served by the store itself
+        return true;
+    }
+
+    @Override
+    public void advance() {
+        // every change written to the store already advanced its sequence
+    }
+}
@@ -0,0 +1,33 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.JobLock;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Job leases of the embedded store, which serves a single application instance so they are kept in memory only
+ */
+@Repository
+@Profile("embedded")
+public class EmbeddedJobLocks implements JobLocks {
+
+    private final Map<String, JobLock> locks = new HashMap<>();
+
+    @Override
+    public synchronized boolean tryLock(String job, String owner, Duration lease) {
+        Instant now = Instant.now();
+        JobLock lock = locks.computeIfAbsent(job, key -> new JobLock());
+        if (lock.getLockedUntil() != null && !lock.getLockedUntil().isBefore(now) && !owner.equals(lock.getOwner())) {
+            return false;
+        }
+        lock.setJob(job);
+        lock.setOwner(owner);
+        lock.setLockedUntil(now.plus(lease));
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package com.kfir.mylibrary.repositories;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kfir.mylibrary.entities.JobWatermark;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Job watermarks of the embedded store, kept in watermarks.json next to the books
+ */
+@Repository
+@Profile("embedded")
+public class EmbeddedJobWatermarkRepository implements JobWatermarkRepository {
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Map<String, JobWatermark> watermarks = new ConcurrentHashMap<>();
+    private final Path file;
+
+    public EmbeddedJobWatermarkRepository(@Value("${books.embedded.path:data}") String path) {
+        this.file = Paths.get(path, "watermarks.json");
+        try {
+            if (Files.exists(file)) {
+                Map<String, JsonNode> saved = mapper.readValue(file.toFile(), new TypeReference<Map<String, JsonNode>>() {
+                });
+                for (Map.Entry<String, JsonNode> watermark : saved.entrySet()) {
+                    watermarks.put(watermark.getKey(), read(watermark.getKey(), watermark.getValue()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load the job watermarks from " + file, e);
+        }
+    }
+
+    @Override
+    public Optional<JobWatermark> findById(String job) {
+        return Optional.ofNullable(watermarks.get(job))
+                .map(watermark -> new JobWatermark(job, watermark.getWatermark(), watermark.getLastRun()));
+    }
+
+    @Override
+    public synchronized <S extends JobWatermark> S save(S watermark) {
+        watermarks.put(watermark.getJob(), new JobWatermark(watermark.getJob(), watermark.getWatermark(), watermark.getLastRun()));
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(temporary.toFile(), watermarks);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to save the job watermarks to " + file, e);
+        }
+        return watermark;
+    }
+
+    /**
+     * Files written before the last run was kept hold only the watermark date
+     */
+    private JobWatermark read(String job, JsonNode watermark) throws IOException {
+        if (watermark.isTextual()) {
+            return new JobWatermark(job, mapper.treeToValue(watermark, LocalDate.class), null);
+        }
+        JobWatermark read = mapper.treeToValue(watermark, JobWatermark.class);
+        read.setJob(job);
+        return read;
+    }
+}
@@ -0,0 +1,45 @@
+package com.kfir.mylibrary.repositories;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Transactions of the embedded store. A transaction holds the write lock of the store, its changes are written
+ * to the log on commit and undone on rollback
+ */
+public class EmbeddedTransactionManager extends AbstractPlatformTransactionManager {
+
+    private final InMemoryBooksRepository store;
+
+    public EmbeddedTransactionManager(InMemoryBooksRepository store) {
+        this.store = store;
+    }
+
+    @Override
+    protected Object doGetTransaction() {
+        return new Object();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        store.begin();
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        try {
+            store.commit();
+        } catch (UncheckedIOException e) {
+            throw new TransactionSystemException("Unable to write the transaction to the books log", e);
+        }
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        store.rollback();
+    }
+}
@@ -0,0 +1,763 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.events.BookChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.IllegalTransactionStateException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Embedded books store for deployments without a reachable mongo server, active with the "embedded" profile.
+ * All the books are kept in memory with concurrent hash indexes on id, branch, title, author, genre and availability,
+ * a sorted index on the due date and the title order used by the paged and streamed searches.
+ * Every change is written to an append-only log before it is applied, the log is compacted into a snapshot every
+ * books.embedded.snapshot-interval and on shutdown (see {@link BookLog}).
+ * Changes are serialized by a lock, reads do not lock and check every book they find through an index again.
+ * A transaction holds the lock until it ends and buffers its changes, they are logged and applied together on
+ * commit so no other thread reads them before. Within the transaction its own changes are read by id only.
+ * The stored books are never modified, callers always get copies
+ */
+@Slf4j
+@Repository
+@Profile("embedded")
+public class InMemoryBooksRepository implements BooksRepository {
+
+    private static final Comparator<Book> TITLE_ORDER = Comparator
+            .comparing(Book::getTitle, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(Book::getId);
+    private static final Sort TITLE_SORT = Sort.by(Sort.Direction.ASC, "title", "id");
+    private static final long MILLIS_PER_DAY = ChronoUnit.DAYS.getDuration().toMillis();
+
+    private final Map<UUID, Book> byId = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byBranch = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byTitle = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byAuthor = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byGenre = new ConcurrentHashMap<>();
+    private final Map<Boolean, Set<UUID>> byAvailability = new ConcurrentHashMap<>();
+    private final NavigableMap<LocalDate, Set<UUID>> byDueDate = new ConcurrentSkipListMap<>();
+    private final NavigableSet<Book> titleOrder = new ConcurrentSkipListSet<>(TITLE_ORDER);
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // id -> book changed by the transaction of the thread, null for a deleted book
+    private final ThreadLocal<Map<UUID, Book>> transaction = new ThreadLocal<>();
+    private final BookLog changeLog;
+    private volatile long sequence;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    public InMemoryBooksRepository(@Value("${books.embedded.path:data}") String path,
+                                   @Value("${books.embedded.sync-writes:false}") boolean syncWrites) {
+        this.changeLog = new BookLog(Paths.get(path), syncWrites);
+        try {
+            this.sequence = changeLog.load(byId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load the embedded books store from " + path, e);
+        }
+        byId.values().forEach(this::index);
+        log.info("Loaded {} books from the embedded store", byId.size());
+    }
+
+    /**
+     * @return sequence of the last change, advances with every change
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Method for compacting the log into a new snapshot, changes are blocked only while the log is rotated
+     */
+    @Scheduled(fixedDelayString = "${books.embedded.snapshot-interval:PT5M}", initialDelayString = "${books.embedded.snapshot-interval:PT5M}")
+    @PreDestroy
+    public void snapshot() {
+        List<Book> books;
+        long snapshotSequence;
+        writeLock.lock();
+        try {
+            if (!changeLog.rotate()) {
+                return;
+            }
+            books = new ArrayList<>(byId.values());
+            snapshotSequence = sequence;
+        } catch (IOException e) {
+            log.warn("Unable to rotate the books log: {}", e.getMessage());
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            changeLog.writeSnapshot(books, snapshotSequence);
+        } catch (IOException e) {
+            log.warn("Unable to write the books snapshot, the log is kept: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a transaction of the current thread, changes of other threads wait until it ends
+     */
+    void begin() {
+        writeLock.lock();
+        if (transaction.get() != null) {
+            writeLock.unlock();
+            throw new IllegalTransactionStateException("Nested transactions are not supported by the embedded store");
+        }
+        transaction.set(new LinkedHashMap<>());
+    }
+
+    /**
+     * Writes the changes of the transaction to the log and then applies them, nothing is applied in case the log
+     * can not be written
+     */
+    void commit() {
+        try {
+            List<BookLog.Record> records = new ArrayList<>();
+            for (Map.Entry<UUID, Book> change : transaction.get().entrySet()) {
+                // a book created and deleted by the transaction is not a change
+                if (change.getValue() != null || byId.containsKey(change.getKey())) {
+                    records.add(new BookLog.Record(sequence + records.size() + 1, change.getKey(), change.getValue()));
+                }
+            }
+            if (records.isEmpty()) {
+                return;
+            }
+            changeLog.append(records);
+            List<Book> previous = new ArrayList<>(records.size());
+            for (BookLog.Record record : records) {
+                previous.add(replace(record.getId(), record.getBook()));
+            }
+            sequence = records.get(records.size() - 1).getSequence();
+            for (int i = 0; i < records.size(); i++) {
+                publish(previous.get(i), records.get(i));
+            }
+        } finally {
+            transaction.remove();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Discards the changes of the transaction, nothing was applied or written to the log
+     */
+    void rollback() {
+        transaction.remove();
+        writeLock.unlock();
+    }
+
+    @Override
+    public List<Book> findAllByTitle(String title) {
+        return lookup(byTitle, title, BookFilter.byTitle(title));
+    }
+
+    @Override
+    public List<Book> findAllByAuthor(String author) {
+        return lookup(byAuthor, author, BookFilter.byAuthor(author));
+    }
+
+    @Override
+    public List<Book> findAllByGenre(String genre) {
+        return lookup(byGenre, genre, BookFilter.byGenre(genre));
+    }
+
+    @Override
+    public List<Book> findAllByIsAvailable(boolean isAvailable) {
+        return lookup(byAvailability, isAvailable, BookFilter.byIsAvailable(isAvailable));
+    }
+
+    @Override
+    public long countByIsAvailable(boolean isAvailable) {
+        return byAvailability.getOrDefault(isAvailable, Set.of()).size();
+    }
+
+    @Override
+    public List<Book> findAllByDueDateIsBefore(LocalDate today) {
+        try (Stream<Book> books = streamAll(BookFilter.byDueDateIsBefore(today))) {
+            return books.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Slice<Book> findSlice(BookFilter filter, BookCursor after, int size) {
+        NavigableSet<Book> candidates = ordered(filter);
+        if (after != null) {
+            candidates = candidates.tailSet(Book.builder().title(after.getTitle()).id(after.getId()).build(), false);
+        }
+        List<Book> books = new ArrayList<>(size + 1);
+        for (Book book : candidates) {
+            if (filter.matches(book)) {
+                books.add(copy(book));
+                if (books.size() > size) {
+                    break;
+                }
+            }
+        }
+        boolean hasNext = books.size() > size;
+        if (hasNext) {
+            books.remove(size);
+        }
+        return new SliceImpl<>(books, PageRequest.of(0, size, TITLE_SORT), hasNext);
+    }
+
+    @Override
+    public Stream<Book> streamAll(BookFilter filter) {
+        return ordered(filter).stream().filter(filter::matches).map(this::copy);
+    }
+
+    @Override
+    public List<Book> findAllMatching(BookFilter filter) {
+        try (Stream<Book> books = streamAll(filter)) {
+            return books.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Optional<Book> borrowIfAvailable(UUID id, String branch, LocalDate borrowedDate, LocalDate dueDate) {
+        writeLock.lock();
+        try {
+            Book book = inBranch(stored(id), branch);
+            if (book == null || !book.isAvailable()) {
+                return Optional.empty();
+            }
+            return Optional.of(copy(write(borrowed(book, borrowedDate, dueDate, Instant.now()))));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Book> returnIfUnavailable(UUID id, String branch) {
+        writeLock.lock();
+        try {
+            Book book = inBranch(stored(id), branch);
+            if (book == null || book.isAvailable()) {
+                return Optional.empty();
+            }
+            return Optional.of(copy(write(returned(book, Instant.now()))));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Book> borrowAllIfAvailable(Collection<UUID> ids, LocalDate borrowedDate, LocalDate dueDate, Instant lastModified) {
+        writeLock.lock();
+        try {
+            List<Book> borrowedBooks = new ArrayList<>(ids.size());
+            for (UUID id : new LinkedHashSet<>(ids)) {
+                Book book = stored(id);
+                if (book != null && book.isAvailable()) {
+                    borrowedBooks.add(copy(write(borrowed(book, borrowedDate, dueDate, lastModified))));
+                }
+            }
+            return borrowedBooks;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Book> returnAllIfUnavailable(Collection<UUID> ids, Instant lastModified) {
+        writeLock.lock();
+        try {
+            List<Book> returnedBooks = new ArrayList<>(ids.size());
+            for (UUID id : new LinkedHashSet<>(ids)) {
+                Book book = stored(id);
+                if (book != null && !book.isAvailable()) {
+                    returnedBooks.add(copy(write(returned(book, lastModified))));
+                }
+            }
+            return returnedBooks;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, String> insertAll(List<Book> books) {
+        Map<Integer, String> errors = new HashMap<>();
+        writeLock.lock();
+        try {
+            for (int i = 0; i < books.size(); i++) {
+                Book book = books.get(i);
+                if (book.getId() != null && stored(book.getId()) != null) {
+                    errors.put(i, String.format("Duplicate key, a book with the id %s already exists", book.getId()));
+                } else {
+                    write(withId(book));
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return errors;
+    }
+
+    @Override
+    public CatalogueCounts aggregateCounts() {
+        Map<String, Long> genres = new HashMap<>();
+        Map<String, Long> authors = new HashMap<>();
+        Map<Boolean, Long> availability = new HashMap<>();
+        for (Book book : byId.values()) {
+            genres.merge(book.getGenre(), 1L, Long::sum);
+            authors.merge(book.getAuthor(), 1L, Long::sum);
+            availability.merge(book.isAvailable(), 1L, Long::sum);
+        }
+        CatalogueCounts counts = new CatalogueCounts();
+        genres.forEach((genre, count) -> counts.getByGenre().add(keyCount(genre, count)));
+        authors.forEach((author, count) -> counts.getByAuthor().add(keyCount(author, count)));
+        availability.forEach((isAvailable, count) -> {
+            CatalogueCounts.AvailabilityCount availabilityCount = new CatalogueCounts.AvailabilityCount();
+            availabilityCount.setId(isAvailable);
+            availabilityCount.setCount(count);
+            counts.getByAvailability().add(availabilityCount);
+        });
+        counts.setLoans(aggregateLoans());
+        return counts;
+    }
+
+    @Override
+    public List<CatalogueCounts.LoanCount> aggregateLoans() {
+        Map<LocalDate, CatalogueCounts.LoanCount> loans = new HashMap<>();
+        for (UUID id : byAvailability.getOrDefault(false, Set.of())) {
+            Book book = byId.get(id);
+            if (book == null || book.isAvailable() || book.getDueDate() == null || book.getBorrowedDate() == null) {
+                continue;
+            }
+            CatalogueCounts.LoanCount loanCount = loans.computeIfAbsent(book.getDueDate(), dueDate -> {
+                CatalogueCounts.LoanCount created = new CatalogueCounts.LoanCount();
+                created.setId(dueDate);
+                return created;
+            });
+            loanCount.setCount(loanCount.getCount() + 1);
+            loanCount.setLoanMillis(loanCount.getLoanMillis()
+                    + ChronoUnit.DAYS.between(book.getBorrowedDate(), book.getDueDate()) * MILLIS_PER_DAY);
+        }
+        return new ArrayList<>(loans.values());
+    }
+
+    @Override
+    public <S extends Book> S save(S entity) {
+        writeLock.lock();
+        try {
+            if (entity.getId() == null) {
+                entity.setId(UUID.randomUUID());
+            }
+            write(entity);
+            return entity;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public <S extends Book> List<S> saveAll(Iterable<S> entities) {
+        writeLock.lock();
+        try {
+            List<S> saved = new ArrayList<>();
+            entities.forEach(entity -> saved.add(save(entity)));
+            return saved;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public <S extends Book> S insert(S entity) {
+        writeLock.lock();
+        try {
+            if (entity.getId() != null && stored(entity.getId()) != null) {
+                throw new DuplicateKeyException(String.format("Duplicate key, a book with the id %s already exists", entity.getId()));
+            }
+            return save(entity);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public <S extends Book> List<S> insert(Iterable<S> entities) {
+        writeLock.lock();
+        try {
+            List<S> inserted = new ArrayList<>();
+            entities.forEach(entity -> inserted.add(insert(entity)));
+            return inserted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Book> findById(UUID id) {
+        return Optional.ofNullable(stored(id)).map(this::copy);
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return stored(id) != null;
+    }
+
+    @Override
+    public List<Book> findAll() {
+        return byId.values().stream().map(this::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Book> findAllById(Iterable<UUID> ids) {
+        List<Book> books = new ArrayList<>();
+        for (UUID id : ids) {
+            Book book = stored(id);
+            if (book != null) {
+                books.add(copy(book));
+            }
+        }
+        return books;
+    }
+
+    @Override
+    public long count() {
+        return byId.size();
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        writeLock.lock();
+        try {
+            erase(id);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Book entity) {
+        deleteById(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        writeLock.lock();
+        try {
+            ids.forEach(this::erase);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Book> entities) {
+        writeLock.lock();
+        try {
+            entities.forEach(entity -> erase(entity.getId()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        writeLock.lock();
+        try {
+            Set<UUID> ids = new LinkedHashSet<>(byId.keySet());
+            if (transaction.get() != null) {
+                ids.addAll(transaction.get().keySet());
+            }
+            ids.forEach(this::erase);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Book> findAll(Sort sort) {
+        List<Book> books = findAll();
+        books.sort(comparator(sort));
+        return books;
+    }
+
+    @Override
+    public Page<Book> findAll(Pageable pageable) {
+        List<Book> books = findAll(pageable.getSort());
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(books, pageable, books.size());
+        }
+        int from = (int) Math.min(pageable.getOffset(), books.size());
+        int to = Math.min(from + pageable.getPageSize(), books.size());
+        return new PageImpl<>(new ArrayList<>(books.subList(from, to)), pageable, books.size());
+    }
+
+    /**
+     * @return the book as the current thread sees it, with the changes of its transaction
+     */
+    private Book stored(UUID id) {
+        Map<UUID, Book> changes = transaction.get();
+        return changes != null && changes.containsKey(id) ? changes.get(id) : byId.get(id);
+    }
+
+    /**
+     * Writes the book to the log and then replaces the stored book, or buffers it in the transaction. Must hold the lock
+     *
+     * @return the stored book
+     */
+    private Book write(Book book) {
+        Book stored = copy(book);
+        change(stored.getId(), stored);
+        return stored;
+    }
+
+    private void erase(UUID id) {
+        if (stored(id) != null) {
+            change(id, null);
+        }
+    }
+
+    /**
+     * @param current - the book after the change, null to delete it
+     */
+    private void change(UUID id, Book current) {
+        Map<UUID, Book> changes = transaction.get();
+        if (changes != null) {
+            changes.put(id, current);
+            return;
+        }
+        BookLog.Record record = new BookLog.Record(sequence + 1, id, current);
+        changeLog.append(List.of(record));
+        Book previous = replace(id, current);
+        sequence = record.getSequence();
+        publish(previous, record);
+    }
+
+    /**
+     * Replaces the stored book and its index entries
+     *
+     * @param current - the book after the change, null to delete it
+     * @return the book before the change, null in case it did not exist
+     */
+    private Book replace(UUID id, Book current) {
+        Book previous = current == null ? byId.remove(id) : byId.put(id, current);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (current != null) {
+            index(current);
+        }
+        return previous;
+    }
+
+    private void publish(Book previous, BookLog.Record record) {
+        Book book = record.getBook();
+        String type;
+        if (book == null) {
+            type = "delete";
+            book = Book.builder().id(record.getId()).build();
+        } else if (previous == null) {
+            type = "create";
+        } else if (previous.isAvailable() != book.isAvailable()) {
+            type = book.isAvailable() ? "return" : "borrow";
+        } else {
+            type = "update";
+        }
+        publisher.publishEvent(new BookChangedEvent(record.getSequence(), type, copy(book)));
+    }
+
+    private void index(Book book) {
+        addTo(byBranch, book.getBranch(), book.getId());
+        addTo(byTitle, book.getTitle(), book.getId());
+        addTo(byAuthor, book.getAuthor(), book.getId());
+        addTo(byGenre, book.getGenre(), book.getId());
+        addTo(byAvailability, book.isAvailable(), book.getId());
+        addTo(byDueDate, book.getDueDate(), book.getId());
+        titleOrder.add(book);
+    }
+
+    private void unindex(Book book) {
+        removeFrom(byBranch, book.getBranch(), book.getId());
+        removeFrom(byTitle, book.getTitle(), book.getId());
+        removeFrom(byAuthor, book.getAuthor(), book.getId());
+        removeFrom(byGenre, book.getGenre(), book.getId());
+        removeFrom(byAvailability, book.isAvailable(), book.getId());
+        removeFrom(byDueDate, book.getDueDate(), book.getId());
+        titleOrder.remove(book);
+    }
+
+    private static <K> void addTo(Map<K, Set<UUID>> index, K key, UUID id) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID id) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private <K> List<Book> lookup(Map<K, Set<UUID>> index, K key, BookFilter filter) {
+        Set<UUID> ids = key == null ? null : index.get(key);
+        List<Book> books = new ArrayList<>();
+        if (ids != null) {
+            for (UUID id : ids) {
+                Book book = byId.get(id);
+                if (book != null && filter.matches(book)) {
+                    books.add(copy(book));
+                }
+            }
+        }
+        return books;
+    }
+
+    /**
+     * @return the books the filter may match in title order, narrowed by an index when the filter has one
+     */
+    private NavigableSet<Book> ordered(BookFilter filter) {
+        Collection<UUID> ids = candidateIds(filter);
+        if (ids == null) {
+            return titleOrder;
+        }
+        NavigableSet<Book> books = new TreeSet<>(TITLE_ORDER);
+        for (UUID id : ids) {
+            Book book = byId.get(id);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * @return ids of the books the filter may match, null in case all the books must be checked.
+     * For a filter scoped to a branch the smaller of the branch and the field candidates is used
+     */
+    private Collection<UUID> candidateIds(BookFilter filter) {
+        Collection<UUID> ids = fieldCandidateIds(filter);
+        if (filter.getBranch() == null) {
+            return ids;
+        }
+        Set<UUID> branchIds = byBranch.getOrDefault(filter.getBranch(), Set.of());
+        return ids == null || branchIds.size() < ids.size() ? branchIds : ids;
+    }
+
+    private Collection<UUID> fieldCandidateIds(BookFilter filter) {
+        if (filter.getField() == null) {
+            return null;
+        }
+        if (filter.isBefore()) {
+            LocalDate until = (LocalDate) filter.getValue();
+            // the changed books may be due anywhere before until
+            LocalDate from = filter.getChangedSince() == null ? (LocalDate) filter.getFrom() : null;
+            if (from != null && !from.isBefore(until)) {
+                return Set.of();
+            }
+            NavigableMap<LocalDate, Set<UUID>> dueDates = from == null
+                    ? byDueDate.headMap(until, false)
+                    : byDueDate.subMap(from, true, until, false);
+            Set<UUID> ids = new HashSet<>();
+            dueDates.values().forEach(ids::addAll);
+            return ids;
+        }
+        Map<?, Set<UUID>> index = switch (filter.getField()) {
+            case "title" -> byTitle;
+            case "author" -> byAuthor;
+            case "genre" -> byGenre;
+            case "isAvailable" -> byAvailability;
+            default -> null;
+        };
+        if (index == null) {
+            return null;
+        }
+        Set<UUID> ids = filter.getValue() == null ? null : index.get(filter.getValue());
+        return ids == null ? Set.of() : ids;
+    }
+
+    private Book copy(Book book) {
+        return book.toBuilder().build();
+    }
+
+    /**
+     * @return the book when it belongs to the branch or the branch is not known (null), otherwise null
+     */
+    private static Book inBranch(Book book, String branch) {
+        return book == null || branch == null || branch.equals(book.getBranch()) ? book : null;
+    }
+
+    private static Book withId(Book book) {
+        return book.getId() != null ? book : book.toBuilder().id(UUID.randomUUID()).build();
+    }
+
+    private static Book borrowed(Book book, LocalDate borrowedDate, LocalDate dueDate, Instant lastModified) {
+        return book.toBuilder().isAvailable(false).borrowedDate(borrowedDate).dueDate(dueDate).lastModified(lastModified).build();
+    }
+
+    private static Book returned(Book book, Instant lastModified) {
+        return book.toBuilder().isAvailable(true).borrowedDate(null).dueDate(null).lastModified(lastModified).build();
+    }
+
+    private static CatalogueCounts.KeyCount keyCount(String key, long count) {
+        CatalogueCounts.KeyCount keyCount = new CatalogueCounts.KeyCount();
+        keyCount.setId(key);
+        keyCount.setCount(count);
+        return keyCount;
+    }
+
+    private static Comparator<Book> comparator(Sort sort) {
+        Comparator<Book> comparator = (first, second) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Book> property = (first, second) -> compareValues(
+                    BookFilter.property(first, order.getProperty()), BookFilter.property(second, order.getProperty()));
+            comparator = comparator.thenComparing(order.isAscending() ? property : property.reversed());
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : -1) : 1;
+        }
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.kfir.mylibrary.repositories;
+
+import java.time.Duration;
+
+/**
+ * Leases of the background jobs, so a job scheduled on every application instance runs on one of them at a time
+ */
+public interface JobLocks {
+
+    /**
+     * Method for taking the lease of a job, or extending it when the caller already holds it
+     *
+     * @param job   - name of the job
+     * @param owner - id of the caller, unique per application instance
+     * @param lease - how long the lease is held unless extended
+     * @return false in case another owner holds a lease that did not end yet
+     */
+    boolean tryLock(String job, String owner, Duration lease);
+}
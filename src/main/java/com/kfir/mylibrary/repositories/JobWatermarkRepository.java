@@ -0,0 +1,16 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.JobWatermark;
+import org.springframework.data.repository.Repository;
+
+import java.util.Optional;
+
+/**
+ * Exposes only the operations the jobs use, so the embedded store can provide them as well
+ */
+public interface JobWatermarkRepository extends Repository<JobWatermark, String> {
+
+    Optional<JobWatermark> findById(String job);
+
+    <S extends JobWatermark> S save(S watermark);
+}
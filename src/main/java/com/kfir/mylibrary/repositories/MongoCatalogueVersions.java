@@ -0,0 +1,113 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.CatalogueVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Version of the books collection, shared by all the application instances through the db. The version is kept in
+ * memory: it is taken from the writes of this instance, read again when the change feed reports a change and at most
+ * every max-age otherwise, so the catalogue requests do not query the db.
+ * The routed reads may lag behind the primary (see {@link ReadRouting#lag()}), a version becomes the readable one
+ * once it was seen for longer than that lag. Clients reading their own writes read from the primary and get the
+ * latest version
+ */
+@Repository
+@Profile("!embedded")
+public class MongoCatalogueVersions implements CatalogueVersions {
+
+    private static final String BOOKS = "books";
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Autowired
+    private ReadRouting readRouting;
+
+    @Value("${books.catalogue.version-max-age:PT1S}")
+    private Duration maxAge;
+
+    private long version = -1;
+    private long refreshedAt;
+    // versions seen within the lag of the routed reads, oldest first, the first one is the readable version
+    private final Deque<Seen> seen = new ArrayDeque<>();
+
+    @Override
+    public long current() {
+        synchronized (this) {
+            if (version < 0 || System.nanoTime() - refreshedAt >= maxAge.toNanos()) {
+                refreshedAt = System.nanoTime();
+            } else {
+                return readRouting.wroteRecently() ? version : readable();
+            }
+        }
+        refresh();
+        synchronized (this) {
+            return readRouting.wroteRecently() ? version : readable();
+        }
+    }
+
+    @Override
+    public synchronized boolean settled() {
+        return readable() == version;
+    }
+
+    @Override
+    public void advance() {
+        CatalogueVersion advanced = template.findAndModify(Query.query(Criteria.where("collection").is(BOOKS)),
+                new Update().inc("version", 1), FindAndModifyOptions.options().returnNew(true).upsert(true), CatalogueVersion.class);
+        observe(advanced == null ? 0 : advanced.getVersion());
+        readRouting.wrote();
+    }
+
+    /**
+     * Method for reading the version from the db again, called when the books were changed by any instance
+     */
+    public void refresh() {
+        CatalogueVersion found = template.findById(BOOKS, CatalogueVersion.class);
+        observe(found == null ? 0 : found.getVersion());
+    }
+
+    private synchronized void observe(long observed) {
+        refreshedAt = System.nanoTime();
+        // concurrent reads may return out of order, the version never goes back
+        if (observed <= version) {
+            return;
+        }
+        // the version found at startup was written before, the reads are taken to reflect it already
+        long seenAt = version < 0 ? refreshedAt - readRouting.lag().toNanos() : refreshedAt;
+        version = observed;
+        seen.addLast(new Seen(observed, seenAt));
+    }
+
+    /**
+     * @return the latest version seen longer than the lag ago, every routed read reflects it
+     */
+    private long readable() {
+        long settledAt = System.nanoTime() - readRouting.lag().toNanos();
+        while (seen.size() > 1) {
+            Iterator<Seen> versions = seen.iterator();
+            versions.next();
+            if (versions.next().seenAt() > settledAt) {
+                break;
+            }
+            seen.removeFirst();
+        }
+        return seen.isEmpty() ? 0 : seen.getFirst().version();
+    }
+
+    private record Seen(long version, long seenAt) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.JobLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Job leases shared by all the application instances through the db. A lease is taken with a single upsert matching
+ * only an ended lease or one of the same owner, the upsert of a held lease fails on the duplicate job id
+ */
+@Repository
+@Profile("!embedded")
+public class MongoJobLocks implements JobLocks {
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Override
+    public boolean tryLock(String job, String owner, Duration lease) {
+        Instant now = Instant.now();
+        Query free = Query.query(Criteria.where("job").is(job)
+                .orOperator(Criteria.where("lockedUntil").lt(now), Criteria.where("owner").is(owner)));
+        try {
+            template.upsert(free, new Update().set("owner", owner).set("lockedUntil", now.plus(lease)), JobLock.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+public interface ReactiveBooksRepository extends ReactiveMongoRepository<Book, UUID>, ReactiveBooksRepositoryCustom {
+
+    Flux<Book> findAllByTitle(String title);
+
+    Flux<Book> findAllByAuthor(String author);
+
+    Flux<Book> findAllByGenre(String genre);
+
+    Flux<Book> findAllByIsAvailable(boolean isAvailable);
+
+    @Query("{ 'isAvailable': false, 'dueDate': { $lt: ?0 } }")
+    Flux<Book> findAllByDueDateIsBefore(LocalDate today);
+
+}
@@ -0,0 +1,28 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+public interface ReactiveBooksRepositoryCustom {
+
+    /**
+     * Method for atomically borrowing a book, the book is changed only if it is currently available
+     *
+     * @param id           - id of the book to borrow
+     * @param borrowedDate - the date the book is borrowed
+     * @param dueDate      - the date the book should be returned
+     * @return the borrowed book, empty if the book does not exist or is not available
+     */
+    Mono<Book> borrowIfAvailable(UUID id, LocalDate borrowedDate, LocalDate dueDate);
+
+    /**
+     * Method for atomically returning a book, the book is changed only if it is currently unavailable
+     *
+     * @param id - id of the book to return
+     * @return the returned book, empty if the book does not exist or is already available
+     */
+    Mono<Book> returnIfUnavailable(UUID id);
+}
@@ -0,0 +1,28 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+public class ReactiveBooksRepositoryCustomImpl implements ReactiveBooksRepositoryCustom {
+
+    @Autowired
+    private ReactiveMongoTemplate template;
+
+    @Override
+    public Mono<Book> borrowIfAvailable(UUID id, LocalDate borrowedDate, LocalDate dueDate) {
+        return template.findAndModify(BookUpdates.withAvailability(id, null, true),
+                BookUpdates.borrow(borrowedDate, dueDate, Instant.now()), BookUpdates.RETURN_NEW, Book.class);
+    }
+
+    @Override
+    public Mono<Book> returnIfUnavailable(UUID id) {
+        return template.findAndModify(BookUpdates.withAvailability(id, null, false),
+                BookUpdates.giveBack(Instant.now()), BookUpdates.RETURN_NEW, Book.class);
+    }
+}
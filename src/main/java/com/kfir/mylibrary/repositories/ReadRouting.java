@@ -0,0 +1,177 @@
+package com.kfir.mylibrary.repositories;
+
+import com.mongodb.ReadPreference;
+import jakarta.servlet.http.Cookie;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.util.WebUtils;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes the reads of the custom repository queries by the workload of the calling thread (see {@link ReadsFrom}).
+ * Every workload has a read preference (books.reads.&lt;key&gt;, primary when the property is not set - the
+ * application.properties reads the lists and the overdue job from secondaryPreferred), reads from secondaries are
+ * bounded by books.reads.max-staleness. Reads outside of a workload - the changes and the read-your-writes lookups -
+ * go to the primary, as do all the derived queries of {@link BooksRepository}.
+ * A client that wrote reads its own writes: the write marks the client with the books-wrote cookie (see
+ * {@link #wrote()}) and for books.reads.max-staleness the reads of its requests go to the primary. Every other
+ * client reads from the secondaries, at most books.reads.max-staleness behind the primary.
+ * Every routed query is counted by books.reads{workload, preference}
+ */
+@Slf4j
+@Component
+@Profile("!embedded")
+public class ReadRouting {
+
+    private static final ThreadLocal<ReadWorkload> CURRENT = new ThreadLocal<>();
+    private static final String DEFAULT_WORKLOAD = "default";
+    static final String WROTE_COOKIE = "books-wrote";
+
+    private final MongoTemplate primary;
+    private final Counter primaryReads;
+    private final Map<ReadWorkload, MongoTemplate> templates = new EnumMap<>(ReadWorkload.class);
+    private final Map<ReadWorkload, Counter> reads = new EnumMap<>(ReadWorkload.class);
+    private final Map<ReadWorkload, Counter> ownWriteReads = new EnumMap<>(ReadWorkload.class);
+    private final Duration maxStaleness;
+    private final boolean secondaryReads;
+
+    public ReadRouting(MongoTemplate template, Environment environment, MeterRegistry registry,
+                       @Value("${books.reads.max-staleness:PT90S}") Duration maxStaleness) {
+        this.primary = template;
+        this.primaryReads = counter(registry, DEFAULT_WORKLOAD, ReadPreference.primary());
+        this.maxStaleness = maxStaleness;
+        Map<ReadPreference, MongoTemplate> routed = new HashMap<>();
+        for (ReadWorkload workload : ReadWorkload.values()) {
+            ReadPreference preference = readPreference(
+                    environment.getProperty("books.reads." + workload.getKey(), "primary"), maxStaleness);
+            templates.put(workload, preference.equals(ReadPreference.primary())
+                    ? template
+                    : routed.computeIfAbsent(preference, added -> routedTemplate(template, added)));
+            reads.put(workload, counter(registry, workload.getKey(), preference));
+            ownWriteReads.put(workload, counter(registry, workload.getKey(), ReadPreference.primary()));
+            log.info("Reads of {} go to {}", workload.getKey(), preference);
+        }
+        this.secondaryReads = !routed.isEmpty();
+    }
+
+    /**
+     * @return the template to read with, reads with the preference of the workload of the calling thread
+     */
+    public MongoTemplate operations() {
+        ReadWorkload workload = CURRENT.get();
+        if (workload == null) {
+            primaryReads.increment();
+            return primary;
+        }
+        MongoTemplate routed = templates.get(workload);
+        if (routed != primary && wroteRecently()) {
+            ownWriteReads.get(workload).increment();
+            return primary;
+        }
+        reads.get(workload).increment();
+        return routed;
+    }
+
+    /**
+     * Method for marking the client of the current request as a writer, its following requests read from the
+     * primary for books.reads.max-staleness. Called after a write, does nothing outside of a request
+     */
+    public void wrote() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes servlet
+                && servlet.getResponse() != null) {
+            ResponseCookie cookie = ResponseCookie.from(WROTE_COOKIE, Long.toString(System.currentTimeMillis()))
+                    .path("/")
+                    .maxAge(maxStaleness)
+                    .httpOnly(true)
+                    .build();
+            servlet.getResponse().addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+        }
+    }
+
+    /**
+     * @return true in case the client of the current request wrote within books.reads.max-staleness
+     */
+    public boolean wroteRecently() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes servlet)) {
+            return false;
+        }
+        Cookie cookie = WebUtils.getCookie(servlet.getRequest(), WROTE_COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        try {
+            return System.currentTimeMillis() - Long.parseLong(cookie.getValue()) < maxStaleness.toMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return how far behind the primary a routed read may be, zero when every workload reads from the primary
+     */
+    public Duration lag() {
+        return secondaryReads ? maxStaleness : Duration.ZERO;
+    }
+
+    /**
+     * Method for setting the workload of the calling thread
+     *
+     * @param workload - the workload of the following reads
+     * @return the previous workload of the thread, to be restored once the reads are done
+     */
+    static ReadWorkload enter(ReadWorkload workload) {
+        ReadWorkload previous = CURRENT.get();
+        CURRENT.set(workload);
+        return previous;
+    }
+
+    static void restore(ReadWorkload previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @param name         - name of the read preference (primary, primaryPreferred, secondary, secondaryPreferred,
+     *                     nearest)
+     * @param maxStaleness - bound of the replication lag of the secondaries, at least 90 seconds
+     * @return the read preference, the primary preference can not have a staleness bound
+     */
+    private static ReadPreference readPreference(String name, Duration maxStaleness) {
+        if ("primary".equalsIgnoreCase(name)) {
+            return ReadPreference.primary();
+        }
+        return ReadPreference.valueOf(name, Collections.emptyList(), maxStaleness.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static MongoTemplate routedTemplate(MongoTemplate template, ReadPreference preference) {
+        MongoTemplate routed = new MongoTemplate(template.getMongoDatabaseFactory(), template.getConverter());
+        routed.setReadPreference(preference);
+        return routed;
+    }
+
+    private static Counter counter(MeterRegistry registry, String workload, ReadPreference preference) {
+        return Counter.builder("books.reads")
+                .tags("workload", workload, "preference", preference.getName())
+                .description("Number of queries routed by the read preference of their workload")
+                .register(registry);
+    }
+}
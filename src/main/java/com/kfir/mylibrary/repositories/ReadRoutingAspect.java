@@ -0,0 +1,24 @@
+package com.kfir.mylibrary.repositories;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets the read workload of the calling thread for the duration of the methods marked with {@link ReadsFrom}
+ */
+@Aspect
+@Component
+public class ReadRoutingAspect {
+
+    @Around("@annotation(readsFrom)")
+    public Object route(ProceedingJoinPoint call, ReadsFrom readsFrom) throws Throwable {
+        ReadWorkload previous = ReadRouting.enter(readsFrom.value());
+        try {
+            return call.proceed();
+        } finally {
+            ReadRouting.restore(previous);
+        }
+    }
+}
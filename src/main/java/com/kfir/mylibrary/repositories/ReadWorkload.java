@@ -0,0 +1,26 @@
+package com.kfir.mylibrary.repositories;
+
+import lombok.Getter;
+
+/**
+ * Kinds of reads that may be served by secondaries, every kind has its own read preference (books.reads.&lt;key&gt;)
+ */
+@Getter
+public enum ReadWorkload {
+
+    /**
+     * the list, page and export endpoints
+     */
+    LISTS("lists"),
+
+    /**
+     * the background overdue job
+     */
+    OVERDUE("overdue");
+
+    private final String key;
+
+    ReadWorkload(String key) {
+        this.key = key;
+    }
+}
@@ -0,0 +1,19 @@
+package com.kfir.mylibrary.repositories;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method whose db reads are routed according to the read preference of the workload, see {@link ReadRouting}.
+ * Reads of unmarked methods go to the primary
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadsFrom {
+
+    ReadWorkload value();
+}
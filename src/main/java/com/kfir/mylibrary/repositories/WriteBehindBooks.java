@@ -0,0 +1,411 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.entities.Book;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind of the created and updated books (books.write-behind.enabled). A write is acknowledged once it is
+ * appended to a local queue (a {@link BookLog} in books.write-behind.path), the "Books_write_behind" thread flushes
+ * the queued books to mongo in unordered bulk writes of at most books.write-behind.batch-size books, at most
+ * books.write-behind.max-delay after they were queued. A book written again before it was flushed is flushed once,
+ * in its latest version, and writers wait once books.write-behind.max-pending books are queued.
+ * The queued books overlay the db for the lookups by id so a client reads its own writes, the lists show them once
+ * they are flushed. Every flushed book is logged as dequeued, the queue is compacted once its log reaches
+ * books.write-behind.compact-size, and on startup the books left in it are flushed again.
+ * A book the db rejects (a duplicate key, a failed validation) can never be written, it is parked in the rejected
+ * directory of the queue and dropped from the queue. Only the books failing with a transient error are retried
+ */
+@Slf4j
+@Component
+@Profile("!embedded")
+@ConditionalOnProperty(name = "books.write-behind.enabled", havingValue = "true")
+public class WriteBehindBooks implements MeterBinder {
+
+    private static final FindAndReplaceOptions UPSERT = FindAndReplaceOptions.options().upsert();
+    // write errors of a single book that may succeed when the book is written again
+    private static final Set<Integer> TRANSIENT_ERRORS = Set.of(6, 7, 50, 89, 91, 112, 189, 262, 9001, 10107, 11600,
+            11602, 13435, 13436);
+
+    // id -> latest queued version of the book, guarded by this
+    private final Map<UUID, Book> pending = new LinkedHashMap<>();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final BookLog queue;
+    private final BookLog parked;
+    private final int batchSize;
+    private final int maxPending;
+    private final Duration maxDelay;
+    private final long compactSize;
+    private long sequence;
+    // guarded by parked
+    private long parkedSequence;
+    private boolean urgent;
+    private volatile boolean running = true;
+    private Thread flusher;
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Autowired
+    private BooksCache cache;
+
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    public WriteBehindBooks(@Value("${books.write-behind.path:write-behind}") String path,
+                            @Value("${books.write-behind.sync-writes:false}") boolean syncWrites,
+                            @Value("${books.write-behind.batch-size:500}") int batchSize,
+                            @Value("${books.write-behind.max-pending:10000}") int maxPending,
+                            @Value("${books.write-behind.max-delay:PT0.2S}") Duration maxDelay,
+                            @Value("${books.write-behind.compact-size:16MB}") DataSize compactSize) {
+        this.queue = new BookLog(Paths.get(path), syncWrites);
+        this.parked = new BookLog(Paths.get(path, "rejected"), true);
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.maxDelay = maxDelay;
+        this.compactSize = compactSize.toBytes();
+        try {
+            this.sequence = queue.load(pending);
+            this.parkedSequence = parked.load(new LinkedHashMap<>());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load the write-behind queue from " + path, e);
+        }
+        if (!pending.isEmpty()) {
+            log.info("Recovered {} books not yet written to the db from the write-behind queue", pending.size());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        flusher = new Thread(this::flushContinuously, "Books_write_behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Method for flushing the queued books before the application stops. The flusher is interrupted when it does not
+     * stop in time, and the final flush is skipped while it still runs so the two never write the same books; the
+     * queued books are then written on the next start
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (flusher != null) {
+            long timeout = maxDelay.multipliedBy(10).toMillis();
+            flusher.join(timeout);
+            if (flusher.isAlive()) {
+                flusher.interrupt();
+                flusher.join(timeout);
+            }
+            if (flusher.isAlive()) {
+                // the queue stays open for the flusher, it is still writing to it
+                log.warn("The write-behind flusher did not stop, {} queued books are written on the next start", pendingCount());
+                return;
+            }
+        }
+        try {
+            while (hasPending()) {
+                flushBatch();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to flush the write-behind queue, the books are written on the next start: {}", e.getMessage());
+        }
+        queue.close();
+        parked.close();
+    }
+
+    /**
+     * Method for queuing a created or updated book, waits while the queue is full
+     *
+     * @param book - the book to write, must have an id
+     * @return the book
+     * @throws UncheckedIOException is thrown in case the queue can not be written, the book is not written
+     */
+    public Book save(Book book) {
+        Book queued = book.toBuilder().build();
+        synchronized (this) {
+            while (pending.size() >= maxPending && !pending.containsKey(queued.getId())) {
+                urgent = true;
+                notifyAll();
+                awaitFlush();
+            }
+            queue.append(List.of(new BookLog.Record(sequence + 1, queued.getId(), queued)));
+            sequence++;
+            pending.put(queued.getId(), queued);
+            if (pending.size() >= batchSize) {
+                notifyAll();
+            }
+        }
+        return book;
+    }
+
+    /**
+     * @param id - id of the book
+     * @return the queued version of the book, the version in the db in case it is not queued
+     */
+    public Optional<Book> findById(UUID id) {
+        Book queued;
+        synchronized (this) {
+            queued = pending.get(id);
+        }
+        return queued != null ? Optional.of(queued.toBuilder().build()) : Optional.ofNullable(template.findById(id, Book.class));
+    }
+
+    /**
+     * Method for waiting until the books are written to the db, used before changing them in the db directly
+     *
+     * @param ids - ids of the books
+     */
+    public synchronized void awaitFlushed(Collection<UUID> ids) {
+        while (ids.stream().anyMatch(pending::containsKey)) {
+            urgent = true;
+            notifyAll();
+            awaitFlush();
+        }
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("books.write.behind.pending", this, WriteBehindBooks::pendingCount)
+                .description("Number of books queued and not yet written to the db")
+                .register(registry);
+        FunctionCounter.builder("books.write.behind.flushed", flushed, LongAdder::sum)
+                .description("Number of queued books written to the db")
+                .register(registry);
+        FunctionCounter.builder("books.write.behind.failures", failures, LongAdder::sum)
+                .description("Number of bulk writes that failed and were retried")
+                .register(registry);
+        FunctionCounter.builder("books.write.behind.rejected", rejected, LongAdder::sum)
+                .description("Number of queued books the db rejected, parked and never written")
+                .register(registry);
+    }
+
+    private void flushContinuously() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    if (running && !urgent && pending.size() < batchSize) {
+                        wait(maxDelay.toMillis());
+                    }
+                    urgent = false;
+                }
+                if (hasPending()) {
+                    flushBatch();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.warn("Unable to write the queued books to the db, retrying: {}", e.getMessage());
+                pause();
+            }
+        }
+    }
+
+    /**
+     * Method for writing the oldest queued books in one bulk write. A book queued again while it was written stays
+     * queued in its newer version. The books the db rejected are parked, the books that failed with a transient
+     * error stay queued
+     *
+     * @throws IllegalStateException is thrown in case some books failed with a transient error, after the other
+     *                               books of the batch are dequeued
+     */
+    private void flushBatch() {
+        List<Book> batch = new ArrayList<>(batchSize);
+        synchronized (this) {
+            for (Book book : pending.values()) {
+                if (batch.size() == batchSize) {
+                    break;
+                }
+                batch.add(book);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = template.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class);
+        for (Book book : batch) {
+            // the full shard key, so the upsert is routed to one shard
+            bulk.replaceOne(Query.query(Criteria.where("id").is(book.getId()).and("branch").is(book.getBranch())),
+                    book, UPSERT);
+        }
+        List<Book> written = batch;
+        List<Book> dequeued = batch;
+        List<Book> retried = new ArrayList<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // unordered, every book without an error was written
+            Set<Integer> failed = new HashSet<>();
+            List<Book> rejectedBooks = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                failed.add(error.getIndex());
+                Book book = batch.get(error.getIndex());
+                if (TRANSIENT_ERRORS.contains(error.getCode())) {
+                    retried.add(book);
+                } else {
+                    log.error("The db rejected the queued book {}, parking it: {}", book.getId(), error.getMessage());
+                    rejectedBooks.add(book);
+                }
+            }
+            park(rejectedBooks);
+            written = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (!failed.contains(i)) {
+                    written.add(batch.get(i));
+                }
+            }
+            dequeued = new ArrayList<>(written);
+            dequeued.addAll(rejectedBooks);
+        }
+        flushed.add(written.size());
+
+        Snapshot snapshot;
+        synchronized (this) {
+            dequeue(dequeued);
+            snapshot = queue.size() >= compactSize ? rotate() : null;
+            notifyAll();
+        }
+        if (snapshot != null) {
+            compact(snapshot);
+        }
+        if (!written.isEmpty()) {
+            catalogueVersions.advance();
+            cache.invalidateAll();
+        }
+        if (!retried.isEmpty()) {
+            throw new IllegalStateException(retried.size() + " books failed with a transient error");
+        }
+    }
+
+    /**
+     * Method for keeping the books the db rejected, they are not retried
+     */
+    private void park(List<Book> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        synchronized (parked) {
+            List<BookLog.Record> records = new ArrayList<>(books.size());
+            for (Book book : books) {
+                records.add(new BookLog.Record(++parkedSequence, book.getId(), book));
+            }
+            parked.append(records);
+        }
+        rejected.add(books.size());
+    }
+
+    /**
+     * Method for removing the written books from the queue, in the version they were written in. The removal is
+     * logged first, so the flushed books are never written again over newer changes of the db
+     */
+    private void dequeue(List<Book> books) {
+        List<BookLog.Record> records = new ArrayList<>(books.size());
+        for (Book book : books) {
+            if (pending.get(book.getId()) == book) {
+                records.add(new BookLog.Record(sequence + records.size() + 1, book.getId(), null));
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        queue.append(records);
+        sequence += records.size();
+        records.forEach(record -> pending.remove(record.getId()));
+    }
+
+    /**
+     * Method for starting a new log of the queue, must be called while holding the monitor
+     *
+     * @return the books queued when the log was started, null in case the log could not be started
+     */
+    private Snapshot rotate() {
+        try {
+            return queue.rotate() ? new Snapshot(List.copyOf(pending.values()), sequence) : null;
+        } catch (IOException e) {
+            log.warn("Unable to compact the write-behind queue: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method for rewriting the queue with only the books still queued, done without holding the monitor so the
+     * writers are not held back while the snapshot is written and synced
+     */
+    private void compact(Snapshot snapshot) {
+        try {
+            queue.writeSnapshot(snapshot.books(), snapshot.sequence());
+        } catch (IOException e) {
+            log.warn("Unable to compact the write-behind queue: {}", e.getMessage());
+        }
+    }
+
+    private synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    private void awaitFlush() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the write-behind queue", e);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(maxDelay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Snapshot(List<Book> books, long sequence) {
+    }
+}
@@ -0,0 +1,277 @@
+package com.kfir.mylibrary.search;
+
+import com.kfir.mylibrary.cache.CompactBooks;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFilter;
+import com.kfir.mylibrary.repositories.BooksRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-process inverted index over the title and author of the books.
+ * Text is case and accent folded and split into words. A query word matches an indexed word exactly, as a prefix
+ * or with one typo (one inserted, deleted, replaced or swapped character), every query word must match.
+ * The index is built at startup and kept up to date by the service on every change.
+ * The indexed books are kept in a {@link CompactBooks}, the results are converted to dtos while they are serialized
+ */
+@Slf4j
+@Component
+public class BooksSearchIndex {
+
+    private static final int TITLE = 1;
+    private static final int AUTHOR = 2;
+    private static final float EXACT = 1f;
+    private static final float PREFIX = 0.7f;
+    private static final float TYPO = 0.5f;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MIN_TYPO_LENGTH = 4;
+    private static final int MAX_PREFIX_EXPANSIONS = 256;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // word -> (book id -> fields the word appears in)
+    private final ConcurrentSkipListMap<String, Map<UUID, Integer>> postings = new ConcurrentSkipListMap<>();
+    // word with one character deleted -> the indexed words it came from, used for the typo matches
+    private final Map<String, Set<String>> deletions = new ConcurrentHashMap<>();
+    private final CompactBooks documents = new CompactBooks();
+
+    @Autowired
+    private BooksRepository repo;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        try (Stream<Book> books = repo.streamAll(BookFilter.all())) {
+            books.forEach(this::index);
+        }
+        log.info("Search index built with {} books and {} words", documents.size(), postings.size());
+    }
+
+    /**
+     * Method for adding a book to the index or replacing its previous version
+     *
+     * @param book - the created or changed book
+     */
+    public synchronized void index(Book book) {
+        remove(book.getId());
+        Map<String, Integer> words = new HashMap<>();
+        tokenize(book.getTitle()).forEach(word -> words.merge(word, TITLE, (a, b) -> a | b));
+        tokenize(book.getAuthor()).forEach(word -> words.merge(word, AUTHOR, (a, b) -> a | b));
+        words.forEach((word, fields) -> {
+            Map<UUID, Integer> books = postings.computeIfAbsent(word, w -> {
+                if (w.length() >= MIN_TYPO_LENGTH) {
+                    deletionsOf(w).forEach(d -> deletions.computeIfAbsent(d, k -> ConcurrentHashMap.newKeySet()).add(w));
+                }
+                return new ConcurrentHashMap<>();
+            });
+            books.put(book.getId(), fields);
+        });
+        documents.put(book);
+    }
+
+    /**
+     * Method for removing a book from the index
+     *
+     * @param id - id of the book to remove
+     */
+    public synchronized void remove(UUID id) {
+        Book previous = documents.getBook(id);
+        if (previous == null) {
+            return;
+        }
+        documents.remove(id);
+        Set<String> words = new HashSet<>(tokenize(previous.getTitle()));
+        words.addAll(tokenize(previous.getAuthor()));
+        for (String word : words) {
+            Map<UUID, Integer> books = postings.get(word);
+            books.remove(id);
+            if (books.isEmpty()) {
+                postings.remove(word);
+                if (word.length() >= MIN_TYPO_LENGTH) {
+                    for (String deletion : deletionsOf(word)) {
+                        Set<String> deleted = deletions.get(deletion);
+                        deleted.remove(word);
+                        if (deleted.isEmpty()) {
+                            deletions.remove(deletion);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Method for searching books by words of their title and author
+     *
+     * @param query - free text, every word of it must match
+     * @param limit - maximal number of books to return
+     * @return the best matching books, best first. title matches rank above author matches and exact matches
+     * above prefix and typo matches
+     */
+    public List<BookDTO> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    /**
+     * Method for searching books of one branch by words of their title and author
+     *
+     * @param query  - free text, every word of it must match
+     * @param limit  - maximal number of books to return
+     * @param branch - the branch of the books, null for all branches
+     * @return the best matching books of the branch, best first
+     */
+    public List<BookDTO> search(String query, int limit, String branch) {
+        Map<UUID, Float> scores = null;
+        for (String word : new LinkedHashSet<>(tokenize(query))) {
+            Map<UUID, Float> wordScores = match(word);
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                Map<UUID, Float> both = new HashMap<>();
+                for (Map.Entry<UUID, Float> score : wordScores.entrySet()) {
+                    Float previous = scores.get(score.getKey());
+                    if (previous != null) {
+                        both.put(score.getKey(), previous + score.getValue());
+                    }
+                }
+                scores = both;
+            }
+            if (scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+        return scores == null ? Collections.emptyList() : top(scores, limit, branch);
+    }
+
+    private Map<UUID, Float> match(String word) {
+        Map<UUID, Float> scores = new HashMap<>();
+        collect(word, EXACT, scores);
+        if (word.length() >= MIN_PREFIX_LENGTH) {
+            NavigableMap<String, Map<UUID, Integer>> prefixed = postings.subMap(word, false, word + Character.MAX_VALUE, false);
+            int expansions = 0;
+            for (String candidate : prefixed.keySet()) {
+                if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                collect(candidate, PREFIX, scores);
+            }
+        }
+        if (word.length() >= MIN_TYPO_LENGTH) {
+            Set<String> candidates = new LinkedHashSet<>(deletions.getOrDefault(word, Collections.emptySet()));
+            for (String deletion : deletionsOf(word)) {
+                if (postings.containsKey(deletion)) {
+                    candidates.add(deletion);
+                }
+                candidates.addAll(deletions.getOrDefault(deletion, Collections.emptySet()));
+            }
+            candidates.remove(word);
+            for (String candidate : candidates) {
+                if (isOneTypoAway(word, candidate)) {
+                    collect(candidate, TYPO, scores);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private void collect(String word, float weight, Map<UUID, Float> scores) {
+        Map<UUID, Integer> books = postings.get(word);
+        if (books == null) {
+            return;
+        }
+        books.forEach((id, fields) -> {
+            float score = weight * (((fields & TITLE) != 0 ? 2 : 0) + ((fields & AUTHOR) != 0 ? 1 : 0));
+            scores.merge(id, score, Math::max);
+        });
+    }
+
+    private List<BookDTO> top(Map<UUID, Float> scores, int limit, String branch) {
+        Comparator<Map.Entry<UUID, Float>> byScore = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<UUID, Float>> best = new PriorityQueue<>(limit + 1, byScore);
+        for (Map.Entry<UUID, Float> score : scores.entrySet()) {
+            if (branch != null && !documents.inBranch(score.getKey(), branch)) {
+                continue;
+            }
+            best.offer(score);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<UUID> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().getKey());
+        }
+        Collections.reverse(result);
+        return documents.lazyList(result);
+    }
+
+    /**
+     * @param text to split
+     * @return the case and accent folded words of the text
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return Collections.emptyList();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(folded)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static List<String> deletionsOf(String word) {
+        List<String> result = new ArrayList<>(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            result.add(word.substring(0, i) + word.substring(i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Optimal string alignment distance of at most one: one insertion, deletion, substitution or adjacent swap
+     */
+    private static boolean isOneTypoAway(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > 1) {
+            return false;
+        }
+        int start = 0;
+        while (start < a.length() && start < b.length() && a.charAt(start) == b.charAt(start)) {
+            start++;
+        }
+        String restA = a.substring(Math.min(start + 1, a.length()));
+        String restB = b.substring(Math.min(start + 1, b.length()));
+        if (a.length() == b.length()) {
+            boolean swapped = start + 1 < a.length()
+                    && a.charAt(start) == b.charAt(start + 1) && a.charAt(start + 1) == b.charAt(start)
+                    && a.substring(start + 2).equals(b.substring(start + 2));
+            return swapped || restA.equals(restB);
+        }
+        return a.length() > b.length() ? restA.equals(b.substring(start)) : restB.equals(a.substring(start));
+    }
+}
@@ -0,0 +1,108 @@
+package com.kfir.mylibrary.services;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a service call: the response of a successful call, or why the call has no response (the search
+ * yielded no results, the book was not found, the book is in the wrong status) with a message.
+ * These outcomes are expected and frequent, so they are returned rather than thrown
+ *
+ * @param <T> - body of the successful response
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BookResult<T> {
+
+    private static final ObjectMapper ERROR_MAPPER = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Getter
+    @AllArgsConstructor
+    public enum Outcome {
+        OK(HttpStatus.OK), EMPTY(HttpStatus.ACCEPTED), NOT_FOUND(HttpStatus.NOT_FOUND), CONFLICT(HttpStatus.CONFLICT);
+
+        private final HttpStatus status;
+    }
+
+    private final Outcome outcome;
+    private final ResponseEntity<T> response;
+    private final String message;
+
+    public static <T> BookResult<T> ok(ResponseEntity<T> response) {
+        return new BookResult<>(Outcome.OK, response, null);
+    }
+
+    public static <T> BookResult<T> empty(String message) {
+        return new BookResult<>(Outcome.EMPTY, null, message);
+    }
+
+    public static <T> BookResult<T> notFound(String message) {
+        return new BookResult<>(Outcome.NOT_FOUND, null, message);
+    }
+
+    public static <T> BookResult<T> conflict(String message) {
+        return new BookResult<>(Outcome.CONFLICT, null, message);
+    }
+
+    public boolean isOk() {
+        return outcome == Outcome.OK;
+    }
+
+    /**
+     * Method for getting the response of the call: the response of a successful call, otherwise accepted (202) for
+     * no results, not found (404) or conflict (409) with the body of the Spring Boot error responses
+     * (timestamp, status, error, message, path)
+     *
+     * @return the response
+     */
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<T> toResponse() {
+        if (isOk()) {
+            return response;
+        }
+        HttpStatus status = outcome.getStatus();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("timestamp", OffsetDateTime.now());
+        body.put("status", status.value());
+        body.put("error", status.getReasonPhrase());
+        body.put("message", message);
+        body.put("path", requestPath());
+        // the error body is written as json whatever the body of the successful response is
+        return (ResponseEntity<T>) ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(new ErrorBody(body));
+    }
+
+    private static String requestPath() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servlet ? servlet.getRequest().getRequestURI() : null;
+    }
+
+    /**
+     * Body of a failed response, serialized as its fields by the message converters and written the same way when
+     * it stands in for a streamed body
+     */
+    private record ErrorBody(@JsonValue Map<String, Object> fields) implements StreamingResponseBody {
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            ERROR_MAPPER.writeValue(out, fields);
+        }
+    }
+}
@@ -1,29 +1,59 @@
 package com.kfir.mylibrary.services;
 
+import com.kfir.mylibrary.dto.BatchResultDTO;
 import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.dto.BookStatsDTO;
+import com.kfir.mylibrary.dto.BulkImportResultDTO;
+import com.kfir.mylibrary.repositories.BookFields;
+import com.kfir.mylibrary.repositories.BookFilter;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 public interface BooksService {
 
-    ResponseEntity<List<BookDTO>> findAllByTitle(String title);
+    BookResult<StreamingResponseBody> findAllByTitle(String title, String branch, BookFields fields, MediaType format);
 
-    ResponseEntity<List<BookDTO>> findAllByAuthor(String author);
+    BookResult<StreamingResponseBody> findAllByAuthor(String author, String branch, BookFields fields, MediaType format);
 
-    ResponseEntity<List<BookDTO>> findAllByGenre(String genre);
+    BookResult<StreamingResponseBody> findAllByGenre(String genre, String branch, BookFields fields, MediaType format);
 
-    ResponseEntity<List<BookDTO>> findAll();
+    BookResult<StreamingResponseBody> findAll(String branch, BookFields fields, MediaType format);
 
-    ResponseEntity<List<BookDTO>> findAllByIsAvailable(boolean isAvailable);
+    BookResult<StreamingResponseBody> findAllByIsAvailable(boolean isAvailable, String branch, BookFields fields, MediaType format);
 
     ResponseEntity<BookDTO> createNew(BookDTO bookDTO);
 
-    ResponseEntity<BookDTO> updateBook(BookDTO bookDTO);
+    BookResult<BookDTO> updateBook(BookDTO bookDTO);
 
-    ResponseEntity<BookDTO> borrowBook(String id);
+    BookResult<BookDTO> borrowBook(String id, String branch);
 
-    ResponseEntity<BookDTO> returnBook(String id);
+    BookResult<BookDTO> returnBook(String id, String branch);
 
-    ResponseEntity<List<BookDTO>> findAllByDueDateIsBefore();
+    ResponseEntity<BatchResultDTO> borrowBooks(List<String> ids, boolean atomic);
+
+    ResponseEntity<BatchResultDTO> returnBooks(List<String> ids, boolean atomic);
+
+    ResponseEntity<BookStatsDTO> getStats();
+
+    BookResult<StreamingResponseBody> findAllByDueDateIsBefore(String branch, BookFields fields, MediaType format);
+
+    BookResult<List<BookDTO>> search(String query, int limit, String branch);
+
+    BookResult<StreamingResponseBody> findSlice(BookFilter filter, String cursor, int size, MediaType format);
+
+    ResponseEntity<StreamingResponseBody> streamAll(BookFilter filter);
+
+    ResponseEntity<Map<String, Long>> getCacheStats();
+
+    long getCatalogueVersion();
+
+    ResponseEntity<SseEmitter> subscribeToEvents(String lastEventId);
+
+    ResponseEntity<BulkImportResultDTO> bulkImport(InputStream input, boolean csv);
 }
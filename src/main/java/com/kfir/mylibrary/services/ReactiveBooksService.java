@@ -0,0 +1,28 @@
+package com.kfir.mylibrary.services;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveBooksService {
+
+    Flux<BookDTO> findAllByTitle(String title);
+
+    Flux<BookDTO> findAllByAuthor(String author);
+
+    Flux<BookDTO> findAllByGenre(String genre);
+
+    Flux<BookDTO> findAll();
+
+    Flux<BookDTO> findAllByIsAvailable(boolean isAvailable);
+
+    Mono<BookDTO> createNew(BookDTO bookDTO);
+
+    Mono<BookDTO> updateBook(BookDTO bookDTO);
+
+    Mono<BookDTO> borrowBook(String id);
+
+    Mono<BookDTO> returnBook(String id);
+
+    Flux<BookDTO> findAllByDueDateIsBefore();
+}
@@ -1,122 +1,199 @@
 package com.kfir.mylibrary.servicesImpl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.dto.BatchResultDTO;
 import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.dto.BookStatsDTO;
+import com.kfir.mylibrary.dto.BulkImportResultDTO;
 import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.events.BookChangeFeed;
 import com.kfir.mylibrary.exceptions.BookNotFoundException;
-import com.kfir.mylibrary.exceptions.EmptyResultsException;
 import com.kfir.mylibrary.exceptions.InvalidDataException;
 import com.kfir.mylibrary.exceptions.WrongStatusException;
+import com.kfir.mylibrary.repositories.BookCursor;
+import com.kfir.mylibrary.repositories.BookFields;
+import com.kfir.mylibrary.repositories.BookFilter;
 import com.kfir.mylibrary.repositories.BooksRepository;
+import com.kfir.mylibrary.repositories.CatalogueVersions;
+import com.kfir.mylibrary.repositories.ReadWorkload;
+import com.kfir.mylibrary.repositories.ReadsFrom;
+import com.kfir.mylibrary.repositories.WriteBehindBooks;
+import com.kfir.mylibrary.search.BooksSearchIndex;
+import com.kfir.mylibrary.services.BookResult;
 import com.kfir.mylibrary.services.BooksService;
+import com.kfir.mylibrary.stats.BooksStatistics;
+import com.kfir.mylibrary.utils.BookJsonWriter;
+import com.kfir.mylibrary.utils.BookMapper;
+import com.kfir.mylibrary.utils.CsvUtil;
 import com.kfir.mylibrary.utils.ObjectMapperUtil;
 import com.kfir.mylibrary.utils.Utilities;
 import com.kfir.mylibrary.utils.validationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
 public class BooksServiceImpl implements BooksService {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int MAX_BATCH_SIZE = 1000;
+
     @Autowired
     private BooksRepository repo;
 
+    @Autowired
+    private ObjectMapper jsonMapper;
+
+    @Autowired
+    private BooksCache cache;
+
+    @Autowired
+    private BooksSearchIndex searchIndex;
+
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    @Autowired
+    private BookChangeFeed changeFeed;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private BooksStatistics statistics;
+
+    // present only in write-behind mode (books.write-behind.enabled)
+    @Autowired(required = false)
+    private WriteBehindBooks writeBehind;
+
+    @Value("${books.bulk.batch-size:1000}")
+    private int bulkBatchSize;
+
     /**
      * Method for finding all books by their title
      *
      * @param title - param for finding the books
+     * @param branch - optional, the branch of the books, null for all branches
+     * @param fields - the fields of the books to return, only these fields are fetched
+     * @param format - json or smile, the encoding of the response
      * @return Response entity with a list of the found books and status code ok (200)
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     * or an empty result in case the search yielded no results
      */
     @Override
-    public ResponseEntity<List<BookDTO>> findAllByTitle(String title) {
-        List<Book> books = repo.findAllByTitle(title);
-        if (books != null && !books.isEmpty()) {
-            List<BookDTO> booksDTOs = ObjectMapperUtil.mapAll(books, BookDTO.class);
-            return ResponseEntity.ok(booksDTOs);
-        } else {
-            throw new EmptyResultsException(String.format("Search yielded no results, no results returned for the title: '%s'", title));
-        }
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findAllByTitle(String title, String branch, BookFields fields, MediaType format) {
+        Stream<Book> books = cachedQuery("title", title, BookFilter.byTitle(title).inBranch(branch).fetching(fields));
+        return writeList(books, (generator, book) -> BookJsonWriter.write(generator, book, fields), format, ResponseEntity.ok(),
+                "Search yielded no results, no results returned for the title: '" + title + "'");
     }
 
     /**
      * Method for finding all books by their author
      *
      * @param author - param for finding the books
+     * @param branch - optional, the branch of the books, null for all branches
+     * @param fields - the fields of the books to return, only these fields are fetched
+     * @param format - json or smile, the encoding of the response
      * @return Response entity with a list of the found books and status code ok (200)
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     * or an empty result in case the search yielded no results
      */
     @Override
-    public ResponseEntity<List<BookDTO>> findAllByAuthor(String author) {
-        List<Book> books = repo.findAllByAuthor(author);
-        if (books != null && !books.isEmpty()) {
-            List<BookDTO> booksDTOs = ObjectMapperUtil.mapAll(books, BookDTO.class);
-            return ResponseEntity.ok(booksDTOs);
-        } else {
-            throw new EmptyResultsException(String.format("Search yielded no results, no results returned for the author: '%s'", author));
-        }
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findAllByAuthor(String author, String branch, BookFields fields, MediaType format) {
+        Stream<Book> books = cachedQuery("author", author, BookFilter.byAuthor(author).inBranch(branch).fetching(fields));
+        return writeList(books, (generator, book) -> BookJsonWriter.write(generator, book, fields), format, ResponseEntity.ok(),
+                "Search yielded no results, no results returned for the author: '" + author + "'");
     }
 
     /**
      * Method for finding all books by their genre
      *
      * @param genre - param for finding the books
+     * @param branch - optional, the branch of the books, null for all branches
+     * @param fields - the fields of the books to return, only these fields are fetched
+     * @param format - json or smile, the encoding of the response
      * @return Response entity with a list of the found books and status code ok (200)
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     * or an empty result in case the search yielded no results
      */
     @Override
-    public ResponseEntity<List<BookDTO>> findAllByGenre(String genre) {
-        List<Book> books = repo.findAllByGenre(genre);
-        if (books != null && !books.isEmpty()) {
-            List<BookDTO> booksDTOs = ObjectMapperUtil.mapAll(books, BookDTO.class);
-            return ResponseEntity.ok(booksDTOs);
-        } else {
-            throw new EmptyResultsException(String.format("Search yielded no results, no results returned for the genre: '%s'", genre));
-        }
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findAllByGenre(String genre, String branch, BookFields fields, MediaType format) {
+        Stream<Book> books = cachedQuery("genre", genre, BookFilter.byGenre(genre).inBranch(branch).fetching(fields));
+        return writeList(books, (generator, book) -> BookJsonWriter.write(generator, book, fields), format, ResponseEntity.ok(),
+                "Search yielded no results, no results returned for the genre: '" + genre + "'");
     }
 
     /**
-     * Method for finding all books regardless of their status
+     * Method for finding all books regardless of their status, the books are written to the response one at a time
+     * as they are read from the db
      *
+     * @param branch - optional, the branch of the books, null for all branches
+     * @param fields - the fields of the books to return, only these fields are fetched
+     * @param format - json or smile, the encoding of the response
      * @return Response entity with a list of the found books and status code ok (200)
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     * or an empty result in case the search yielded no results
      */
     @Override
-    public ResponseEntity<List<BookDTO>> findAll() {
-
-        List<Book> books = repo.findAll(Sort.by(Sort.Direction.ASC, "title"));
-        if (!books.isEmpty()) {
-            List<BookDTO> booksDTOs = ObjectMapperUtil.mapAll(books, BookDTO.class);
-            return ResponseEntity.ok(booksDTOs);
-        } else {
-            throw new EmptyResultsException("Search yielded no results");
-        }
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findAll(String branch, BookFields fields, MediaType format) {
+        return writeList(repo.streamAll(BookFilter.all().inBranch(branch).fetching(fields)),
+                (generator, book) -> BookJsonWriter.write(generator, book, fields), format, ResponseEntity.ok(),
+                "Search yielded no results");
     }
 
     /**
      * Method for finding all books by their availability status
      *
      * @param isAvailable - param for finding the books
+     * @param branch      - optional, the branch of the books, null for all branches
+     * @param fields      - the fields of the books to return, only these fields are fetched (the loan dates of
+     *                    available books are always null and never fetched)
+     * @param format      - json or smile, the encoding of the response
      * @return Response entity with a list of the found books and status code ok (200)
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     * or an empty result in case the search yielded no results
      */
     @Override
-    public ResponseEntity<List<BookDTO>> findAllByIsAvailable(boolean isAvailable) {
-
-        List<Book> books = repo.findAllByIsAvailable(isAvailable);
-        if (books != null && !books.isEmpty()) {
-            List<BookDTO> booksDTOs = ObjectMapperUtil.mapAll(books, BookDTO.class);
-
-            return ResponseEntity.ok(booksDTOs);
-        } else {
-            throw new EmptyResultsException("Search yielded no results, no available books found!");
-        }
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findAllByIsAvailable(boolean isAvailable, String branch, BookFields fields, MediaType format) {
+        Stream<Book> books = cachedQuery("isAvailable", isAvailable, BookFilter.byIsAvailable(isAvailable).inBranch(branch).fetching(fields));
+        return writeList(books, (generator, book) -> BookJsonWriter.write(generator, book, fields), format, ResponseEntity.ok(),
+                "Search yielded no results, no available books found!");
     }
 
     /**
@@ -129,13 +206,11 @@ public class BooksServiceImpl implements BooksService {
     @Override
     public ResponseEntity<BookDTO> createNew(BookDTO bookDTO) {
         if (validationUtil.isBookValidForSave(bookDTO)) {
-            Book book = repo.save(Book.builder()
-                    .id(UUID.randomUUID())
-                    .title(bookDTO.getTitle())
-                    .author(bookDTO.getAuthor())
-                    .genre(bookDTO.getGenre())
-                    .isAvailable(true)
-                    .build());
+            Book book = save(BookMapper.toNewBook(bookDTO));
+            catalogueVersions.advance();
+            cache.invalidate(book);
+            searchIndex.index(book);
+            statistics.added(book);
 
             return ResponseEntity.ok(ObjectMapperUtil.map(book, BookDTO.class));
         } else {
@@ -147,25 +222,40 @@ public class BooksServiceImpl implements BooksService {
      * Method for updating an existing book
      *
      * @param bookDTO - according to this param the existing book will be updated
-     * @return Response entity with the updated book and status code ok (200)
-     * @throws InvalidDataException  is thrown in case the param (bookDTO) provided is invalid
-     * @throws BookNotFoundException is thrown in case the book to update does not exist
+     * @return Response entity with the updated book and status code ok (200),
+     * or a not found result in case the book to update does not exist
+     * @throws InvalidDataException is thrown in case the param (bookDTO) provided is invalid
      */
     @Override
-    public ResponseEntity<BookDTO> updateBook(BookDTO bookDTO) {
+    public BookResult<BookDTO> updateBook(BookDTO bookDTO) {
 
         if (validationUtil.isBookValidForSave(bookDTO)) {
-            Optional<Book> bookToUpdate = repo.findById(bookDTO.getId());
+            Optional<Book> bookToUpdate = findById(bookDTO.getId());
+            String previousTitle;
+            String previousAuthor;
+            String previousGenre;
+            Book previous;
             if (bookToUpdate.isPresent()) {
+                previous = bookToUpdate.get().toBuilder().build();
+                previousTitle = bookToUpdate.get().getTitle();
+                previousAuthor = bookToUpdate.get().getAuthor();
+                previousGenre = bookToUpdate.get().getGenre();
                 bookToUpdate.get().setTitle(bookDTO.getTitle());
                 bookToUpdate.get().setAuthor(bookDTO.getAuthor());
                 bookToUpdate.get().setGenre(bookDTO.getGenre());
                 bookToUpdate.get().setDueDate(bookDTO.getDueDate());
                 bookToUpdate.get().setBorrowedDate(bookDTO.getBorrowedDate());
+                bookToUpdate.get().setLastModified(Instant.now());
             } else {
-                throw new BookNotFoundException(String.format("Unable to update the book '%s', book not found", bookDTO.getTitle()));
+                return BookResult.notFound("Unable to update the book '" + bookDTO.getTitle() + "', book not found");
             }
-            return ResponseEntity.ok(ObjectMapperUtil.map(repo.save(bookToUpdate.get()), BookDTO.class));
+            Book book = save(bookToUpdate.get());
+            catalogueVersions.advance();
+            cache.invalidate(previousTitle, previousAuthor, previousGenre, previous.getBranch());
+            cache.invalidate(book);
+            searchIndex.index(book);
+            statistics.changed(previous, book);
+            return BookResult.ok(ResponseEntity.ok(ObjectMapperUtil.map(book, BookDTO.class)));
         } else {
             throw new InvalidDataException("Invalid data, unable to update book");
         }
@@ -174,67 +264,549 @@ public class BooksServiceImpl implements BooksService {
     /**
      * Method for borrowing a book
      *
-     * @param id - according to this param the user can borrow the correct book
-     * @return Response entity with an updated borrowed book and status code ok (200)
-     * @throws WrongStatusException  is thrown in case trying to change the book status to the same existing status
-     * @throws BookNotFoundException is thrown in case the book to borrow does not exist
+     * @param id     - according to this param the user can borrow the correct book
+     * @param branch - optional, the branch of the book, null when it is not known
+     * @return Response entity with an updated borrowed book and status code ok (200),
+     * a conflict result in case the book is already borrowed or a not found result in case it does not exist
+     * (in the branch)
      */
     @Override
-    public ResponseEntity<BookDTO> borrowBook(String id) {
-        Optional<Book> bookToBorrow = repo.findById(UUID.fromString(id));
-        if (bookToBorrow.isPresent()) {
-            if (bookToBorrow.get().isAvailable()) {
-                bookToBorrow.get().setBorrowedDate(LocalDate.now());
-                bookToBorrow.get().setDueDate(Utilities.getDueDate(14));
-                bookToBorrow.get().setAvailable(false);
+    public BookResult<BookDTO> borrowBook(String id, String branch) {
+        UUID bookId = UUID.fromString(id);
+        awaitFlushed(List.of(bookId));
+        Optional<Book> borrowedBook = repo.borrowIfAvailable(bookId, branch, LocalDate.now(), Utilities.getDueDate(14));
+        if (borrowedBook.isEmpty()) {
+            Optional<Book> bookToBorrow = repo.findById(bookId).filter(book -> branch == null || branch.equals(book.getBranch()));
+            if (bookToBorrow.isPresent()) {
+                return BookResult.conflict("You are trying to borrow an unavailable book. The book will be available again on " + bookToBorrow.get().getDueDate());
             } else {
-                throw new WrongStatusException(String.format("You are trying to borrow an unavailable book. The book will be available again on %s", bookToBorrow.get().getDueDate()));
+                return BookResult.notFound("Unable to land the book requested due to: book not found!");
             }
-        } else {
-            throw new BookNotFoundException("Unable to land the book requested due to: book not found!");
         }
-        return ResponseEntity.ok(ObjectMapperUtil.map(repo.save(bookToBorrow.get()), BookDTO.class));
+        catalogueVersions.advance();
+        cache.invalidate(borrowedBook.get());
+        searchIndex.index(borrowedBook.get());
+        statistics.borrowed(borrowedBook.get());
+        return BookResult.ok(ResponseEntity.ok(ObjectMapperUtil.map(borrowedBook.get(), BookDTO.class)));
     }
 
     /**
      * Method for returning a book
      *
-     * @param id - according to this param the user can return a book
-     * @return Response entity with an updated returned book and status code ok (200)
-     * @throws WrongStatusException  is thrown in case trying to change the book status to the same existing status
-     * @throws BookNotFoundException is thrown in case the book to return does not exist
+     * @param id     - according to this param the user can return a book
+     * @param branch - optional, the branch of the book, null when it is not known
+     * @return Response entity with an updated returned book and status code ok (200),
+     * a conflict result in case the book is already returned or a not found result in case it does not exist
+     * (in the branch)
      */
     @Override
-    public ResponseEntity<BookDTO> returnBook(String id) {
-        Optional<Book> bookToReturn = repo.findById(UUID.fromString(id));
-        if (bookToReturn.isPresent()) {
-            if (!bookToReturn.get().isAvailable()) {
-                bookToReturn.get().setBorrowedDate(null);
-                bookToReturn.get().setDueDate(null);
-                bookToReturn.get().setAvailable(true);
+    public BookResult<BookDTO> returnBook(String id, String branch) {
+        UUID bookId = UUID.fromString(id);
+        awaitFlushed(List.of(bookId));
+        Optional<Book> returnedBook = repo.returnIfUnavailable(bookId, branch);
+        if (returnedBook.isEmpty()) {
+            if (repo.findById(bookId).filter(book -> branch == null || branch.equals(book.getBranch())).isPresent()) {
+                return BookResult.conflict("You are trying to return a book that is already returned");
             } else {
-                throw new WrongStatusException("You are trying to return a book that is already returned");
+                return BookResult.notFound("Unable to accept the returned book due to: book not found!");
             }
-        } else {
-            throw new BookNotFoundException("Unable to accept the returned book due to: book not found!");
         }
-        return ResponseEntity.ok(ObjectMapperUtil.map(repo.save(bookToReturn.get()), BookDTO.class));
+        catalogueVersions.advance();
+        cache.invalidate(returnedBook.get());
+        searchIndex.index(returnedBook.get());
+        statistics.returned(returnedBook.get());
+        return BookResult.ok(ResponseEntity.ok(ObjectMapperUtil.map(returnedBook.get(), BookDTO.class)));
     }
 
     /**
-     * Method for finding all overdue books
+     * Method for getting the statistics of the catalogue, served from memory and never scanning the collection
      *
+     * @return Response entity with the counts by genre, author and availability, the overdue count and the
+     * average loan duration, and status code ok (200)
+     */
+    @Override
+    public ResponseEntity<BookStatsDTO> getStats() {
+        return ResponseEntity.ok(statistics.snapshot());
+    }
+
+    /**
+     * Method for borrowing many books at once, the books are loaded in one query and every book is
+     * changed by its own conditional update
+     *
+     * @param ids    - ids of the books to borrow
+     * @param atomic - true for all-or-nothing: if any book can not be borrowed no book is borrowed
+     * @return Response entity with the outcome of every id and status code ok (200). the status of an id is the
+     * status a single borrow would return: 200, 404 (BookNotFoundException) or 409 (WrongStatusException),
+     * 400 for a missing or malformed id and 424 for a book not borrowed because another book of an atomic batch failed
+     * @throws InvalidDataException is thrown in case the batch is empty or too large
+     */
+    @Override
+    public ResponseEntity<BatchResultDTO> borrowBooks(List<String> ids, boolean atomic) {
+        return ResponseEntity.ok(changeAvailability(ids, true, atomic));
+    }
+
+    /**
+     * Method for returning many books at once, the books are loaded in one query and every book is
+     * changed by its own conditional update
+     *
+     * @param ids    - ids of the books to return
+     * @param atomic - true for all-or-nothing: if any book can not be returned no book is returned
+     * @return Response entity with the outcome of every id and status code ok (200), see {@link #borrowBooks}
+     * @throws InvalidDataException is thrown in case the batch is empty or too large
+     */
+    @Override
+    public ResponseEntity<BatchResultDTO> returnBooks(List<String> ids, boolean atomic) {
+        return ResponseEntity.ok(changeAvailability(ids, false, atomic));
+    }
+
+    /**
+     * Method for finding all overdue books, the books are written to the response one at a time as they are read
+     * from the db
+     *
+     * @param branch - optional, the branch of the books, null for all branches
+     * @param fields - the fields of the books to return, only these fields are fetched
+     * @param format - json or smile, the encoding of the response
      * @return Response entity with a list of all overdue books and status code ok (200)
-     * @throws EmptyResultsException is thrown in case the search yielded no results
+     * or an empty result in case the search yielded no results
+     */
+    @Override
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findAllByDueDateIsBefore(String branch, BookFields fields, MediaType format) {
+        return writeList(repo.streamAll(BookFilter.byDueDateIsBefore(LocalDate.now()).inBranch(branch).fetching(fields)),
+                (generator, book) -> BookJsonWriter.write(generator, book, fields), format,
+                ResponseEntity.ok(), "Search yielded no results, no overdue books found!");
+    }
+
+    /**
+     * Method for free text search of books by their title and author
+     *
+     * @param query - the words to search for, matched case insensitively, as prefixes and with one typo
+     * @param limit - maximal number of books to return (capped at 100)
+     * @param branch - optional, the branch of the books, null for all branches
+     * @return Response entity with the best matching books, best first, and status code ok (200)
+     * or an empty result in case the search yielded no results
+     * @throws InvalidDataException is thrown in case the query has no words or the limit is invalid
      */
     @Override
-    public ResponseEntity<List<BookDTO>> findAllByDueDateIsBefore() {
-        List<Book> books = repo.findAllByDueDateIsBefore(LocalDate.now());
-        if (books != null && !books.isEmpty()) {
-            List<BookDTO> booksDTOs = ObjectMapperUtil.mapAll(books, BookDTO.class);
-            return ResponseEntity.ok(booksDTOs);
+    public BookResult<List<BookDTO>> search(String query, int limit, String branch) {
+        if (BooksSearchIndex.tokenize(query).isEmpty() || limit < 1) {
+            throw new InvalidDataException("Invalid data, unable to search without words to search for");
+        }
+        List<BookDTO> booksDTOs = searchIndex.search(query, Math.min(limit, MAX_SEARCH_RESULTS), branch);
+        if (!booksDTOs.isEmpty()) {
+            return BookResult.ok(ResponseEntity.ok(booksDTOs));
         } else {
-            throw new EmptyResultsException("Search yielded no results, no overdue books found!");
+            return BookResult.empty("Search yielded no results, no results returned for the query: '" + query + "'");
+        }
+    }
+
+    /**
+     * Method for finding one page of books, books are ordered by title
+     *
+     * @param filter - which books to return, and which of their fields when it has fields
+     * @param cursor - the cursor returned with the previous page, null for the first page
+     * @param size   - maximal number of books to return (capped at 1000)
+     * @param format - json or smile, the encoding of the response
+     * @return Response entity with a list of the found books and status code ok (200),
+     * the cursor of the next page is returned in the X-Next-Cursor header when more books exist,
+     * or an empty result in case the search yielded no results
+     * @throws InvalidDataException is thrown in case the cursor or the size are invalid
+     */
+    @Override
+    @ReadsFrom(ReadWorkload.LISTS)
+    public BookResult<StreamingResponseBody> findSlice(BookFilter filter, String cursor, int size, MediaType format) {
+        if (size < 1) {
+            throw new InvalidDataException("Invalid data, page size must be positive");
+        }
+        BookCursor after = cursor == null ? null : BookCursor.decode(cursor);
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        Slice<Book> slice = cache.getPage(filter, after, pageSize, () -> repo.findSlice(filter, after, pageSize));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (slice.hasNext()) {
+            List<Book> books = slice.getContent();
+            response.header(NEXT_CURSOR_HEADER, BookCursor.of(books.get(books.size() - 1)).encode());
+        }
+        BookFields fields = filter.getFields() == null ? BookFields.all() : filter.getFields();
+        return writeList(slice.getContent().stream(), (generator, book) -> BookJsonWriter.write(generator, book, fields),
+                format, response, "Search yielded no results");
+    }
+
+    /**
+     * Method for streaming books as newline delimited json, one book at a time from the db cursor.
+     * The cursor is opened by the calling thread so it is routed by the read preference of the lists
+     *
+     * @param filter - which books to return, and which of their fields when it has fields
+     * @return Response entity with the streamed books and status code ok (200)
+     */
+    @Override
+    @ReadsFrom(ReadWorkload.LISTS)
+    public ResponseEntity<StreamingResponseBody> streamAll(BookFilter filter) {
+        Stream<Book> books = repo.streamAll(filter);
+        BookFields fields = filter.getFields() == null ? BookFields.all() : filter.getFields();
+        StreamingResponseBody body = out -> {
+            try (books;
+                 JsonGenerator generator = BookJsonWriter.createGenerator(out, MediaType.APPLICATION_JSON)) {
+                generator.setRootValueSeparator(null);
+                Iterator<Book> iterator = books.iterator();
+                while (iterator.hasNext()) {
+                    BookJsonWriter.write(generator, iterator.next(), fields);
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Method for writing books as a json (or smile) array. The first book is read before the response is committed
+     * so an empty result is still reported, the rest are written one at a time while the response is sent
+     *
+     * @param books        - the books to write, closed once written
+     * @param writer       - writes a single book
+     * @param format       - json or smile, the encoding of the response
+     * @param response     - status and headers of the response
+     * @param emptyMessage - message of the exception thrown when there are no books
+     * @return Response entity writing the books, an empty result in case there are no books
+     */
+    private <T> BookResult<StreamingResponseBody> writeList(Stream<T> books, BookWriter<T> writer, MediaType format,
+                                                            ResponseEntity.BodyBuilder response, String emptyMessage) {
+        Iterator<T> iterator;
+        try {
+            iterator = books.iterator();
+            if (!iterator.hasNext()) {
+                books.close();
+                return BookResult.empty(emptyMessage);
+            }
+        } catch (RuntimeException e) {
+            books.close();
+            throw e;
+        }
+        StreamingResponseBody body = out -> {
+            try (books; JsonGenerator generator = BookJsonWriter.createGenerator(out, format)) {
+                generator.writeStartArray();
+                while (iterator.hasNext()) {
+                    writer.write(generator, iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        };
+        return BookResult.ok(response.contentType(format).body(body));
+    }
+
+    /**
+     * Method for getting the version of the books collection, it is advanced after every change of any book
+     *
+     * @return the current version
+     */
+    @Override
+    public long getCatalogueVersion() {
+        return catalogueVersions.current();
+    }
+
+    /**
+     * Reads a search through the cache, the cached books are the fetched entities and are written as they are.
+     * While a change may not have reached the secondaries yet the books are streamed from the db cursor without
+     * keeping them, so the cache never holds books older than a change it was evicted for
+     *
+     * @param field  - the searched field
+     * @param value  - the searched value
+     * @param filter - the search, in its branch and with its fields
+     * @return the found books, to be closed once written
+     */
+    private Stream<Book> cachedQuery(String field, Object value, BookFilter filter) {
+        if (!catalogueVersions.settled()) {
+            return repo.streamAll(filter);
+        }
+        return cache.getQuery(field, value, filter.getBranch(), filter.getFields(), () -> repo.findAllMatching(filter)).stream();
+    }
+
+    /**
+     * Method for subscribing to the server sent events of the books changes (create, update, borrow, return, delete)
+     *
+     * @param lastEventId - id of the last event received before reconnecting, the missed events are sent first
+     * @return Response entity with the events emitter and status code ok (200)
+     */
+    @Override
+    public ResponseEntity<SseEmitter> subscribeToEvents(String lastEventId) {
+        return ResponseEntity.ok(changeFeed.subscribe(lastEventId));
+    }
+
+    /**
+     * Method for getting the statistics of the books search cache
+     *
+     * @return Response entity with the cache hit, miss and eviction counters, the number of coalesced searches
+     * and status code ok (200)
+     */
+    @Override
+    public ResponseEntity<Map<String, Long>> getCacheStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("coalesced", cache.coalescedCount());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Method for creating many new books at once. Rows are validated one by one and the valid ones are
+     * inserted in unordered bulk writes of books.bulk.batch-size books
+     *
+     * @param input - the books to create, one per line
+     * @param csv   - true if the input is csv with a header line (title, author, genre columns), false if it is
+     *              newline delimited json of bookDTOs
+     * @return Response entity with a summary of the import, including the errors of the rejected rows, and status code ok (200)
+     * @throws InvalidDataException is thrown in case the input can not be read or the csv header is invalid
+     */
+    @Override
+    public ResponseEntity<BulkImportResultDTO> bulkImport(InputStream input, boolean csv) {
+        BulkImportResultDTO result = new BulkImportResultDTO();
+        ObjectReader bookReader = jsonMapper.readerFor(BookDTO.class);
+        List<Book> batch = new ArrayList<>(bulkBatchSize);
+        List<Long> batchRows = new ArrayList<>(bulkBatchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            long row = 0;
+            int[] columns = null;
+            if (csv) {
+                columns = csvColumns(reader.readLine());
+                row++;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                row++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                result.setReceived(result.getReceived() + 1);
+                BookDTO bookDTO;
+                try {
+                    bookDTO = csv ? csvBook(line, columns) : bookReader.readValue(line);
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    rejectRow(result, row, "Malformed row, unable to read the book");
+                    continue;
+                }
+                if (!validationUtil.isBookValidForSave(bookDTO)) {
+                    rejectRow(result, row, "Invalid data, unable to create new book");
+                    continue;
+                }
+                batch.add(BookMapper.toNewBook(bookDTO));
+                batchRows.add(row);
+                if (batch.size() == bulkBatchSize) {
+                    insertBatch(batch, batchRows, result);
+                }
+            }
+            insertBatch(batch, batchRows, result);
+        } catch (IOException e) {
+            throw new InvalidDataException("Invalid data, unable to read the books to import");
+        } finally {
+            if (result.getInserted() > 0) {
+                cache.invalidateAll();
+            }
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private int[] csvColumns(String header) {
+        List<String> names = header == null ? List.of() : CsvUtil.parseLine(header);
+        int[] columns = {names.indexOf("title"), names.indexOf("author"), names.indexOf("genre")};
+        for (int column : columns) {
+            if (column < 0) {
+                throw new InvalidDataException("Invalid data, the csv header must contain the columns title, author and genre");
+            }
+        }
+        return columns;
+    }
+
+    private BookDTO csvBook(String line, int[] columns) {
+        List<String> values = CsvUtil.parseLine(line);
+        BookDTO bookDTO = new BookDTO();
+        bookDTO.setTitle(values.get(columns[0]));
+        bookDTO.setAuthor(values.get(columns[1]));
+        bookDTO.setGenre(values.get(columns[2]));
+        return bookDTO;
+    }
+
+    private void insertBatch(List<Book> batch, List<Long> batchRows, BulkImportResultDTO result) {
+        Map<Integer, String> errors = repo.insertAll(batch);
+        result.setInserted(result.getInserted() + batch.size() - errors.size());
+        if (errors.size() < batch.size()) {
+            catalogueVersions.advance();
+        }
+        errors.forEach((index, message) -> rejectRow(result, batchRows.get(index), message));
+        for (int i = 0; i < batch.size(); i++) {
+            if (!errors.containsKey(i)) {
+                searchIndex.index(batch.get(i));
+                statistics.added(batch.get(i));
+            }
         }
+        batch.clear();
+        batchRows.clear();
+    }
+
+    private void rejectRow(BulkImportResultDTO result, long row, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new BulkImportResultDTO.RowError(row, message));
+        }
+    }
+
+    /**
+     * Method for writing a created or updated book, to the write-behind queue when it is enabled
+     */
+    private Book save(Book book) {
+        return writeBehind != null ? writeBehind.save(book) : repo.save(book);
+    }
+
+    /**
+     * Method for finding a book by id, a book still in the write-behind queue is found in its queued version
+     */
+    private Optional<Book> findById(UUID id) {
+        return writeBehind != null ? writeBehind.findById(id) : repo.findById(id);
+    }
+
+    /**
+     * Method for waiting until the queued versions of the books are written, the availability changes are applied
+     * to the books in the db
+     */
+    private void awaitFlushed(Collection<UUID> ids) {
+        if (writeBehind != null) {
+            writeBehind.awaitFlushed(ids);
+        }
+    }
+
+    private BatchResultDTO changeAvailability(List<String> ids, boolean borrow, boolean atomic) {
+        if (ids == null || ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+            throw new InvalidDataException(String.format("Invalid data, a batch must contain between 1 and %d ids", MAX_BATCH_SIZE));
+        }
+        // the results are kept by book, ids naming the same book (in another letter case) share its result
+        Map<String, UUID> bookIds = new HashMap<>();
+        Map<String, BatchResultDTO.ItemResult> invalid = new HashMap<>();
+        Set<UUID> candidates = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (id == null || id.isBlank()) {
+                invalid.put(id, new BatchResultDTO.ItemResult(id, HttpStatus.BAD_REQUEST.value(), "Invalid id, the id is missing", null));
+                continue;
+            }
+            try {
+                UUID bookId = UUID.fromString(id);
+                bookIds.put(id, bookId);
+                candidates.add(bookId);
+            } catch (IllegalArgumentException e) {
+                invalid.put(id, new BatchResultDTO.ItemResult(id, HttpStatus.BAD_REQUEST.value(), "Invalid id", null));
+            }
+        }
+
+        awaitFlushed(candidates);
+        Map<UUID, Book> books = new HashMap<>();
+        repo.findAllById(candidates).forEach(book -> books.put(book.getId(), book));
+        Map<UUID, BatchResultDTO.ItemResult> results = new HashMap<>();
+        List<UUID> toChange = new ArrayList<>(candidates.size());
+        for (UUID id : candidates) {
+            Book book = books.get(id);
+            if (book == null) {
+                results.put(id, failure(id.toString(), notFound(borrow)));
+            } else if (book.isAvailable() != borrow) {
+                results.put(id, failure(id.toString(), wrongStatus(borrow, book)));
+            } else {
+                toChange.add(id);
+            }
+        }
+
+        if (atomic && (!results.isEmpty() || !invalid.isEmpty())) {
+            toChange.forEach(id -> results.put(id, notApplied(id.toString())));
+        } else if (!toChange.isEmpty()) {
+            Instant lastModified = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+            try {
+                List<Book> changed;
+                if (atomic) {
+                    changed = transactionTemplate.execute(status -> {
+                        List<Book> all = updateAvailability(toChange, borrow, lastModified);
+                        if (all.size() != toChange.size()) {
+                            throw new WrongStatusException("The status of some of the books changed during the batch, no book was changed");
+                        }
+                        return all;
+                    });
+                } else {
+                    changed = updateAvailability(toChange, borrow, lastModified);
+                }
+                collectChanged(toChange, changed, borrow, results);
+            } catch (WrongStatusException e) {
+                toChange.forEach(id -> results.put(id, failure(id.toString(), e)));
+            }
+        }
+
+        BatchResultDTO batch = new BatchResultDTO();
+        for (String id : new LinkedHashSet<>(ids)) {
+            BatchResultDTO.ItemResult result = bookIds.containsKey(id) ? results.get(bookIds.get(id)) : invalid.get(id);
+            batch.getResults().add(new BatchResultDTO.ItemResult(id, result.getStatus(), result.getMessage(), result.getBook()));
+            if (result.getStatus() == HttpStatus.OK.value()) {
+                batch.setSucceeded(batch.getSucceeded() + 1);
+            } else {
+                batch.setFailed(batch.getFailed() + 1);
+            }
+        }
+        return batch;
+    }
+
+    private List<Book> updateAvailability(List<UUID> ids, boolean borrow, Instant lastModified) {
+        return borrow
+                ? repo.borrowAllIfAvailable(ids, LocalDate.now(), Utilities.getDueDate(14), lastModified)
+                : repo.returnAllIfUnavailable(ids, lastModified);
+    }
+
+    /**
+     * The books returned by the conditional updates were changed by this batch, the others were changed or deleted
+     * concurrently and are read again for their result
+     */
+    private void collectChanged(List<UUID> ids, List<Book> changed, boolean borrow,
+                                Map<UUID, BatchResultDTO.ItemResult> results) {
+        for (Book book : changed) {
+            results.put(book.getId(), new BatchResultDTO.ItemResult(book.getId().toString(), HttpStatus.OK.value(), null, BookMapper.toDTO(book)));
+            cache.invalidate(book);
+            searchIndex.index(book);
+            if (borrow) {
+                statistics.borrowed(book);
+            } else {
+                statistics.returned(book);
+            }
+        }
+        List<UUID> missed = ids.stream().filter(id -> !results.containsKey(id)).toList();
+        if (!missed.isEmpty()) {
+            repo.findAllById(missed).forEach(book -> results.put(book.getId(), failure(book.getId().toString(), wrongStatus(borrow, book))));
+            missed.forEach(id -> results.putIfAbsent(id, failure(id.toString(), notFound(borrow))));
+        }
+        if (!changed.isEmpty()) {
+            catalogueVersions.advance();
+        }
+    }
+
+    private RuntimeException notFound(boolean borrow) {
+        return new BookNotFoundException(borrow
+                ? "Unable to land the book requested due to: book not found!"
+                : "Unable to accept the returned book due to: book not found!");
+    }
+
+    private RuntimeException wrongStatus(boolean borrow, Book book) {
+        return new WrongStatusException(borrow
+                ? String.format("You are trying to borrow an unavailable book. The book will be available again on %s", book.getDueDate())
+                : "You are trying to return a book that is already returned");
+    }
+
+    private BatchResultDTO.ItemResult failure(String id, RuntimeException e) {
+        HttpStatus status = e instanceof BookNotFoundException ? HttpStatus.NOT_FOUND : HttpStatus.CONFLICT;
+        return new BatchResultDTO.ItemResult(id, status.value(), e.getMessage(), null);
+    }
+
+    private BatchResultDTO.ItemResult notApplied(String id) {
+        return new BatchResultDTO.ItemResult(id, HttpStatus.FAILED_DEPENDENCY.value(),
+                "Not changed, another book of the batch failed", null);
+    }
+
+    /**
+     * Writes a single book of a list response
+     */
+    @FunctionalInterface
+    private interface BookWriter<T> {
+        void write(JsonGenerator generator, T book) throws IOException;
     }
 }
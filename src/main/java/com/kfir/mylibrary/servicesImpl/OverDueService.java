@@ -1,41 +1,109 @@
 package com.kfir.mylibrary.servicesImpl;
 
 import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.entities.JobWatermark;
+import com.kfir.mylibrary.events.OverdueEvent;
+import com.kfir.mylibrary.events.OverdueEventSink;
+import com.kfir.mylibrary.repositories.BookCursor;
+import com.kfir.mylibrary.repositories.BookFilter;
 import com.kfir.mylibrary.repositories.BooksRepository;
+import com.kfir.mylibrary.repositories.JobLocks;
+import com.kfir.mylibrary.repositories.JobWatermarkRepository;
+import com.kfir.mylibrary.repositories.ReadRouting;
+import com.kfir.mylibrary.repositories.ReadWorkload;
+import com.kfir.mylibrary.repositories.ReadsFrom;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.UUID;
 
 
+@Slf4j
 @Service
 public class OverDueService {
 
+    private static final String JOB = "overdue";
+
+    // the owner of the job lease, one per application instance
+    private final String instance = UUID.randomUUID().toString();
+
     @Autowired
     private BooksRepository repo;
 
+    @Autowired
+    private JobWatermarkRepository watermarks;
+
+    @Autowired
+    private JobLocks locks;
+
+    // absent with the embedded store, which has no lagging reads
+    @Autowired(required = false)
+    private ReadRouting readRouting;
+
+    @Autowired
+    private List<OverdueEventSink> sinks;
+
+    @Value("${books.overdue.batch-size:500}")
+    private int batchSize;
+
+    @Value("${books.overdue.lock-lease:PT5M}")
+    private Duration lockLease;
+
     /**
-     * Service that runs periodically (once a day) and notify for any overdue book
+     * Service that runs periodically (books.overdue.cron) and notify for any book that became overdue since the
+     * previous run. Books are walked in batches, the persisted watermark is the first due date not yet processed
+     * and it is advanced only after all the batches were published, so a failed run is retried by the next one.
+     * Loans changed since the start of the previous run are checked again whatever their due date, so a due date
+     * edited to before the watermark is not missed.
+     * The batches are read with the overdue read preference (books.reads.overdue), the watermark from the primary.
+     * Every instance schedules the job, it runs on the one holding its lease (books.overdue.lock-lease). The lease is
+     * extended by every batch and kept after the run, so the other instances skip the same tick
      */
-    @Bean
-    public void StartInBackground() {
-        TimerTask checkForOverdueBooksTask = new TimerTask() {
-            public void run() {
-                List<Book> dueBooks = repo.findAllByDueDateIsBefore(LocalDate.now());
-                if (dueBooks != null && !dueBooks.isEmpty()) {
-                    dueBooks.stream().forEach(b -> System.out.printf("%s was due in %s%n", b.getTitle(), b.getDueDate()));
-                }
-            }
-        };
+    @Scheduled(cron = "${books.overdue.cron:0 0 * * * *}")
+    @ReadsFrom(ReadWorkload.OVERDUE)
+    public void checkForOverdueBooks() {
+        if (!locks.tryLock(JOB, instance, lockLease)) {
+            log.debug("Overdue job skipped, another instance runs it");
+            return;
+        }
+        // taken before reading and set back by the lag of the reads, the changes a lagging read may not return yet
+        // are checked by the next run
+        Instant startedAt = Instant.now().minus(readRouting == null ? Duration.ZERO : readRouting.lag());
+        LocalDate today = LocalDate.now();
+        JobWatermark watermark = watermarks.findById(JOB).orElse(new JobWatermark(JOB, null, null));
+        BookFilter filter = watermark.getWatermark() == null
+                ? BookFilter.byDueDateIsBefore(today)
+                : BookFilter.byDueDateBetween(watermark.getWatermark(), today).orChangedSince(watermark.getLastRun());
 
-        Timer timer = new Timer("Overdue_books_timer");
+        BookCursor cursor = null;
+        Slice<Book> batch;
+        do {
+            if (cursor != null && !locks.tryLock(JOB, instance, lockLease)) {
+                log.warn("Overdue job stopped, its lease was taken by another instance");
+                return;
+            }
+            batch = repo.findSlice(filter, cursor, batchSize);
+            for (Book book : batch) {
+                OverdueEvent event = new OverdueEvent(book.getId(), book.getTitle(), book.getAuthor(),
+                        book.getBorrowedDate(), book.getDueDate());
+                sinks.forEach(sink -> sink.publish(event));
+            }
+            if (batch.hasContent()) {
+                List<Book> books = batch.getContent();
+                cursor = BookCursor.of(books.get(books.size() - 1));
+            }
+        } while (batch.hasNext());
 
-        long delay = 0L;
-        long period = 1000L * 60L * 60L * 24L;
-        timer.scheduleAtFixedRate(checkForOverdueBooksTask, delay, period);
+        watermark.setWatermark(today);
+        watermark.setLastRun(startedAt);
+        watermarks.save(watermark);
     }
 }
@@ -0,0 +1,238 @@
+package com.kfir.mylibrary.servicesImpl;
+
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.exceptions.BookNotFoundException;
+import com.kfir.mylibrary.exceptions.EmptyResultsException;
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import com.kfir.mylibrary.exceptions.WrongStatusException;
+import com.kfir.mylibrary.repositories.CatalogueVersions;
+import com.kfir.mylibrary.repositories.ReactiveBooksRepository;
+import com.kfir.mylibrary.search.BooksSearchIndex;
+import com.kfir.mylibrary.services.ReactiveBooksService;
+import com.kfir.mylibrary.stats.BooksStatistics;
+import com.kfir.mylibrary.utils.BookMapper;
+import com.kfir.mylibrary.utils.Utilities;
+import com.kfir.mylibrary.utils.validationUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Non blocking variant of {@link BooksServiceImpl}, errors are signaled with the same exceptions.
+ * Active with the reactive profile, it requires the reactive mongo driver so it is not available with the embedded store
+ */
+@Service
+@Profile("reactive & !embedded")
+public class ReactiveBooksServiceImpl implements ReactiveBooksService {
+
+    @Autowired
+    private ReactiveBooksRepository repo;
+
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    @Autowired
+    private BooksCache cache;
+
+    @Autowired
+    private BooksSearchIndex searchIndex;
+
+    @Autowired
+    private BooksStatistics statistics;
+
+    /**
+     * Method for finding all books by their title
+     *
+     * @param title - param for finding the books
+     * @return the found books, errors with EmptyResultsException in case the search yielded no results
+     */
+    @Override
+    public Flux<BookDTO> findAllByTitle(String title) {
+        return orEmptyResults(repo.findAllByTitle(title).map(BookMapper::toDTO),
+                String.format("Search yielded no results, no results returned for the title: '%s'", title));
+    }
+
+    /**
+     * Method for finding all books by their author
+     *
+     * @param author - param for finding the books
+     * @return the found books, errors with EmptyResultsException in case the search yielded no results
+     */
+    @Override
+    public Flux<BookDTO> findAllByAuthor(String author) {
+        return orEmptyResults(repo.findAllByAuthor(author).map(BookMapper::toDTO),
+                String.format("Search yielded no results, no results returned for the author: '%s'", author));
+    }
+
+    /**
+     * Method for finding all books by their genre
+     *
+     * @param genre - param for finding the books
+     * @return the found books, errors with EmptyResultsException in case the search yielded no results
+     */
+    @Override
+    public Flux<BookDTO> findAllByGenre(String genre) {
+        return orEmptyResults(repo.findAllByGenre(genre).map(BookMapper::toDTO),
+                String.format("Search yielded no results, no results returned for the genre: '%s'", genre));
+    }
+
+    /**
+     * Method for finding all books regardless of their status
+     *
+     * @return all books ordered by title, errors with EmptyResultsException in case there are no books
+     */
+    @Override
+    public Flux<BookDTO> findAll() {
+        return orEmptyResults(repo.findAll(Sort.by(Sort.Direction.ASC, "title")).map(BookMapper::toDTO),
+                "Search yielded no results");
+    }
+
+    /**
+     * Method for finding all books by their availability status
+     *
+     * @param isAvailable - param for finding the books
+     * @return the found books, errors with EmptyResultsException in case the search yielded no results
+     */
+    @Override
+    public Flux<BookDTO> findAllByIsAvailable(boolean isAvailable) {
+        return orEmptyResults(repo.findAllByIsAvailable(isAvailable).map(BookMapper::toDTO),
+                "Search yielded no results, no available books found!");
+    }
+
+    /**
+     * Method for creating new book
+     *
+     * @param bookDTO - according to this param a new book is created
+     * @return the newly created book, errors with InvalidDataException in case the param (bookDTO) provided is invalid
+     */
+    @Override
+    public Mono<BookDTO> createNew(BookDTO bookDTO) {
+        if (!validationUtil.isBookValidForSave(bookDTO)) {
+            return Mono.error(new InvalidDataException("Invalid data, unable to create new book"));
+        }
+        return written(repo.save(BookMapper.toNewBook(bookDTO)), book -> {
+            cache.invalidate(book);
+            searchIndex.index(book);
+            statistics.added(book);
+        }).map(BookMapper::toDTO);
+    }
+
+    /**
+     * Method for updating an existing book
+     *
+     * @param bookDTO - according to this param the existing book will be updated
+     * @return the updated book, errors with InvalidDataException in case the param (bookDTO) provided is invalid
+     * or with BookNotFoundException in case the book to update does not exist
+     */
+    @Override
+    public Mono<BookDTO> updateBook(BookDTO bookDTO) {
+        if (!validationUtil.isBookValidForSave(bookDTO)) {
+            return Mono.error(new InvalidDataException("Invalid data, unable to update book"));
+        }
+        return repo.findById(bookDTO.getId())
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new BookNotFoundException(
+                        String.format("Unable to update the book '%s', book not found", bookDTO.getTitle())))))
+                .flatMap(book -> {
+                    Book previous = book.toBuilder().build();
+                    book.setTitle(bookDTO.getTitle());
+                    book.setAuthor(bookDTO.getAuthor());
+                    book.setGenre(bookDTO.getGenre());
+                    book.setDueDate(bookDTO.getDueDate());
+                    book.setBorrowedDate(bookDTO.getBorrowedDate());
+                    book.setLastModified(Instant.now());
+                    return written(repo.save(book), updated -> {
+                        cache.invalidate(previous);
+                        cache.invalidate(updated);
+                        searchIndex.index(updated);
+                        statistics.changed(previous, updated);
+                    });
+                })
+                .map(BookMapper::toDTO);
+    }
+
+    /**
+     * Method for borrowing a book
+     *
+     * @param id - according to this param the user can borrow the correct book
+     * @return the borrowed book, errors with WrongStatusException in case the book is not available
+     * or with BookNotFoundException in case the book to borrow does not exist
+     */
+    @Override
+    public Mono<BookDTO> borrowBook(String id) {
+        UUID bookId = UUID.fromString(id);
+        return written(repo.borrowIfAvailable(bookId, LocalDate.now(), Utilities.getDueDate(14)), book -> {
+                    cache.invalidate(book);
+                    searchIndex.index(book);
+                    statistics.borrowed(book);
+                })
+                .switchIfEmpty(Mono.defer(() -> repo.findById(bookId)
+                        .flatMap(book -> Mono.<Book>error(new WrongStatusException(String.format("You are trying to borrow an unavailable book. The book will be available again on %s", book.getDueDate()))))
+                        .switchIfEmpty(Mono.defer(() -> Mono.error(new BookNotFoundException("Unable to land the book requested due to: book not found!"))))))
+                .map(BookMapper::toDTO);
+    }
+
+    /**
+     * Method for returning a book
+     *
+     * @param id - according to this param the user can return a book
+     * @return the returned book, errors with WrongStatusException in case the book is already available
+     * or with BookNotFoundException in case the book to return does not exist
+     */
+    @Override
+    public Mono<BookDTO> returnBook(String id) {
+        UUID bookId = UUID.fromString(id);
+        return written(repo.returnIfUnavailable(bookId), book -> {
+                    cache.invalidate(book);
+                    searchIndex.index(book);
+                    statistics.returned(book);
+                })
+                .switchIfEmpty(Mono.defer(() -> repo.existsById(bookId)
+                        .flatMap(exists -> Mono.<Book>error(exists
+                                ? new WrongStatusException("You are trying to return a book that is already returned")
+                                : new BookNotFoundException("Unable to accept the returned book due to: book not found!")))))
+                .map(BookMapper::toDTO);
+    }
+
+    /**
+     * Method for finding all overdue books
+     *
+     * @return the overdue books, errors with EmptyResultsException in case the search yielded no results
+     */
+    @Override
+    public Flux<BookDTO> findAllByDueDateIsBefore() {
+        return orEmptyResults(repo.findAllByDueDateIsBefore(LocalDate.now()).map(BookMapper::toDTO),
+                "Search yielded no results, no overdue books found!");
+    }
+
+    /**
+     * Advances the catalogue version after the book was written and runs the same post-write hooks as the blocking
+     * service (cache, search index and statistics). The version is advanced on the blocking driver, so off the event
+     * loop
+     *
+     * @param written - the write, empty when nothing was written
+     * @param hooks   - updates the cache, the search index and the statistics with the written book
+     */
+    private Mono<Book> written(Mono<Book> written, Consumer<Book> hooks) {
+        return written.flatMap(book -> Mono.fromRunnable(() -> {
+                    catalogueVersions.advance();
+                    hooks.accept(book);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .thenReturn(book));
+    }
+
+    private Flux<BookDTO> orEmptyResults(Flux<BookDTO> books, String message) {
+        return books.switchIfEmpty(Flux.defer(() -> Flux.error(new EmptyResultsException(message))));
+    }
+}
@@ -0,0 +1,206 @@
+package com.kfir.mylibrary.stats;
+
+import com.kfir.mylibrary.dto.BookStatsDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BooksRepository;
+import com.kfir.mylibrary.repositories.CatalogueCounts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Statistics of the catalogue, kept in memory so a request never scans the collection.
+ * The counts are loaded by one aggregation on startup and every books.stats.resync-interval, in between they are
+ * updated incrementally from the book mutations. A return does not carry the dates of the ended loan, so it marks
+ * the loans stale and they are aggregated again (borrowed books only) in the background.
+ * The served snapshot is rebuilt from the counts at most once every books.stats.ttl
+ */
+@Component
+public class BooksStatistics {
+
+    private static final double MILLIS_PER_DAY = Duration.ofDays(1).toMillis();
+
+    private final Map<String, Long> byGenre = new HashMap<>();
+    private final Map<String, Long> byAuthor = new HashMap<>();
+    private final NavigableMap<LocalDate, Loans> loansByDueDate = new TreeMap<>();
+    private long available;
+    private long borrowed;
+    private boolean loansStale;
+    private BookStatsDTO snapshot;
+
+    @Value("${books.stats.ttl:PT5S}")
+    private Duration ttl;
+
+    @Autowired
+    private BooksRepository repo;
+
+    /**
+     * Method for loading all the counts from the db, corrects any drift of the incremental updates
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${books.stats.resync-interval:PT1H}", initialDelayString = "${books.stats.resync-interval:PT1H}")
+    public void resync() {
+        CatalogueCounts counts = repo.aggregateCounts();
+        synchronized (this) {
+            byGenre.clear();
+            byAuthor.clear();
+            available = 0;
+            borrowed = 0;
+            counts.getByGenre().forEach(count -> increment(byGenre, count.getId(), count.getCount()));
+            counts.getByAuthor().forEach(count -> increment(byAuthor, count.getId(), count.getCount()));
+            for (CatalogueCounts.AvailabilityCount count : counts.getByAvailability()) {
+                if (count.isId()) {
+                    available = count.getCount();
+                } else {
+                    borrowed = count.getCount();
+                }
+            }
+            loadLoans(counts.getLoans());
+            loansStale = false;
+        }
+    }
+
+    /**
+     * Method for aggregating the loans again after books were returned
+     */
+    @Scheduled(fixedDelayString = "${books.stats.ttl:PT5S}")
+    public void refreshLoans() {
+        synchronized (this) {
+            if (!loansStale) {
+                return;
+            }
+            loansStale = false;
+        }
+        List<CatalogueCounts.LoanCount> loans = repo.aggregateLoans();
+        synchronized (this) {
+            loadLoans(loans);
+        }
+    }
+
+    /**
+     * Method for getting the statistics, rebuilt from the in-memory counts once the previous snapshot expired
+     *
+     * @return the statistics of the catalogue
+     */
+    public synchronized BookStatsDTO snapshot() {
+        Instant now = Instant.now();
+        if (snapshot == null || snapshot.getComputedAt().plus(ttl).isBefore(now)) {
+            snapshot = compute(now);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param book - the created book
+     */
+    public synchronized void added(Book book) {
+        count(book, 1);
+    }
+
+    /**
+     * @param before - the book before the change
+     * @param after  - the book after the change
+     */
+    public synchronized void changed(Book before, Book after) {
+        count(before, -1);
+        count(after, 1);
+    }
+
+    /**
+     * @param book - the borrowed book (state after the change)
+     */
+    public synchronized void borrowed(Book book) {
+        available--;
+        borrowed++;
+        countLoan(book, 1);
+    }
+
+    /**
+     * @param book - the returned book (state after the change)
+     */
+    public synchronized void returned(Book book) {
+        available++;
+        borrowed--;
+        loansStale = true;
+    }
+
+    private BookStatsDTO compute(Instant now) {
+        long loans = 0;
+        long loanDays = 0;
+        for (Loans dueDateLoans : loansByDueDate.values()) {
+            loans += dueDateLoans.count;
+            loanDays += dueDateLoans.days;
+        }
+        long overdue = 0;
+        for (Loans dueDateLoans : loansByDueDate.headMap(LocalDate.now()).values()) {
+            overdue += dueDateLoans.count;
+        }
+
+        BookStatsDTO stats = new BookStatsDTO();
+        stats.setTotal(available + borrowed);
+        stats.setAvailable(available);
+        stats.setBorrowed(borrowed);
+        stats.setOverdue(overdue);
+        stats.setAverageLoanDays(loans > 0 ? (double) loanDays / loans : 0);
+        stats.setByGenre(new TreeMap<>(byGenre));
+        stats.setByAuthor(new TreeMap<>(byAuthor));
+        stats.setComputedAt(now);
+        return stats;
+    }
+
+    private void count(Book book, int sign) {
+        increment(byGenre, book.getGenre(), sign);
+        increment(byAuthor, book.getAuthor(), sign);
+        if (book.isAvailable()) {
+            available += sign;
+        } else {
+            borrowed += sign;
+        }
+        countLoan(book, sign);
+    }
+
+    private void countLoan(Book book, int sign) {
+        if (book.isAvailable() || book.getDueDate() == null || book.getBorrowedDate() == null) {
+            return;
+        }
+        Loans loans = loansByDueDate.computeIfAbsent(book.getDueDate(), dueDate -> new Loans());
+        loans.count += sign;
+        loans.days += sign * ChronoUnit.DAYS.between(book.getBorrowedDate(), book.getDueDate());
+        if (loans.count == 0) {
+            loansByDueDate.remove(book.getDueDate());
+        }
+    }
+
+    private void loadLoans(List<CatalogueCounts.LoanCount> counts) {
+        loansByDueDate.clear();
+        for (CatalogueCounts.LoanCount count : counts) {
+            Loans loans = new Loans();
+            loans.count = count.getCount();
+            loans.days = Math.round(count.getLoanMillis() / MILLIS_PER_DAY);
+            loansByDueDate.put(count.getId(), loans);
+        }
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long delta) {
+        counts.merge(Objects.toString(key, ""), delta, (current, added) -> current + added == 0 ? null : current + added);
+    }
+
+    private static class Loans {
+        private long count;
+        private long days;
+    }
+}
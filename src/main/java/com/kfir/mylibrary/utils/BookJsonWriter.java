@@ -0,0 +1,141 @@
+package com.kfir.mylibrary.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFields;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Writes books in the shape of {@link BookDTO} straight to a json (or smile) generator, field by field.
+ * Used for the list responses so a book read from the db is written without mapping it to a dto first.
+ * A list may ask for a subset of the fields ({@link BookFields}), the other fields are left out
+ */
+public final class BookJsonWriter {
+
+    public static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+    private static final JsonFactory SMILE_FACTORY = SmileFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    /**
+     * Hide from public usage.
+     */
+    private BookJsonWriter() {
+    }
+
+    /**
+     * Method for choosing the encoding of a list response, smile is used only when asked for explicitly and not
+     * with a lower quality than json
+     *
+     * @param accept - value of the Accept header, may be null
+     * @return {@link #SMILE} or application/json
+     */
+    public static MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+        double smile = 0;
+        double json = 0;
+        try {
+            for (MediaType type : MediaType.parseMediaTypes(accept)) {
+                if (SMILE.equalsTypeAndSubtype(type)) {
+                    smile = Math.max(smile, type.getQualityValue());
+                } else if (MediaType.APPLICATION_JSON.equalsTypeAndSubtype(type)) {
+                    json = Math.max(json, type.getQualityValue());
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        return smile > 0 && smile >= json ? SMILE : MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * @param out    - the response body, it is left open when the generator is closed
+     * @param format - {@link #SMILE} or json
+     * @return new generator writing to out
+     * @throws IOException is thrown in case the generator can not be created
+     */
+    public static JsonGenerator createGenerator(OutputStream out, MediaType format) throws IOException {
+        return (SMILE.equalsTypeAndSubtype(format) ? SMILE_FACTORY : JSON_FACTORY).createGenerator(out);
+    }
+
+    /**
+     * @param generator - where to write the book
+     * @param book      - entity to write, only the fields of the dto are written
+     * @throws IOException is thrown in case the book can not be written
+     */
+    public static void write(JsonGenerator generator, Book book) throws IOException {
+        write(generator, book, BookFields.all());
+    }
+
+    /**
+     * @param generator - where to write the book
+     * @param book      - entity to write, may be fetched with only the written fields
+     * @param fields    - the fields of the dto to write
+     * @throws IOException is thrown in case the book can not be written
+     */
+    public static void write(JsonGenerator generator, Book book, BookFields fields) throws IOException {
+        write(generator, fields, book.getId(), book.getBranch(), book.getTitle(), book.getAuthor(), book.getGenre(),
+                book.getDueDate(), book.getBorrowedDate());
+    }
+
+    /**
+     * @param generator - where to write the book
+     * @param bookDTO   - dto to write
+     * @throws IOException is thrown in case the book can not be written
+     */
+    public static void write(JsonGenerator generator, BookDTO bookDTO) throws IOException {
+        write(generator, bookDTO, BookFields.all());
+    }
+
+    /**
+     * @param generator - where to write the book
+     * @param bookDTO   - dto to write
+     * @param fields    - the fields of the dto to write
+     * @throws IOException is thrown in case the book can not be written
+     */
+    public static void write(JsonGenerator generator, BookDTO bookDTO, BookFields fields) throws IOException {
+        write(generator, fields, bookDTO.getId(), bookDTO.getBranch(), bookDTO.getTitle(), bookDTO.getAuthor(),
+                bookDTO.getGenre(), bookDTO.getDueDate(), bookDTO.getBorrowedDate());
+    }
+
+    private static void write(JsonGenerator generator, BookFields fields, UUID id, String branch, String title,
+                              String author, String genre, LocalDate dueDate, LocalDate borrowedDate) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, fields, "id", id == null ? null : id.toString());
+        writeString(generator, fields, "branch", branch);
+        writeString(generator, fields, "title", title);
+        writeString(generator, fields, "author", author);
+        writeString(generator, fields, "genre", genre);
+        writeString(generator, fields, "dueDate", dueDate == null ? null : dueDate.toString());
+        writeString(generator, fields, "borrowedDate", borrowedDate == null ? null : borrowedDate.toString());
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, BookFields fields, String field, String value)
+            throws IOException {
+        if (!fields.includes(field)) {
+            return;
+        }
+        if (value == null) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeStringField(field, value);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.kfir.mylibrary.utils;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Explicit field by field mapping between {@link Book} and {@link BookDTO}
+ */
+public final class BookMapper {
+
+    /**
+     * Hide from public usage.
+     */
+    private BookMapper() {
+    }
+
+    /**
+     * @param book entity to map
+     * @return new dto holding the book fields, null if book is null
+     */
+    public static BookDTO toDTO(Book book) {
+        if (book == null) {
+            return null;
+        }
+        BookDTO bookDTO = new BookDTO();
+        bookDTO.setId(book.getId());
+        bookDTO.setBranch(book.getBranch());
+        bookDTO.setTitle(book.getTitle());
+        bookDTO.setAuthor(book.getAuthor());
+        bookDTO.setGenre(book.getGenre());
+        bookDTO.setDueDate(book.getDueDate());
+        bookDTO.setBorrowedDate(book.getBorrowedDate());
+        return bookDTO;
+    }
+
+    /**
+     * <p>Note: the dto has no availability, the availability of the result is left unset (false)</p>
+     *
+     * @param bookDTO dto to map
+     * @return new entity holding the dto fields, null if bookDTO is null
+     */
+    public static Book toEntity(BookDTO bookDTO) {
+        if (bookDTO == null) {
+            return null;
+        }
+        Book book = new Book();
+        book.setId(bookDTO.getId());
+        book.setBranch(bookDTO.getBranch());
+        book.setTitle(bookDTO.getTitle());
+        book.setAuthor(bookDTO.getAuthor());
+        book.setGenre(bookDTO.getGenre());
+        book.setDueDate(bookDTO.getDueDate());
+        book.setBorrowedDate(bookDTO.getBorrowedDate());
+        return book;
+    }
+
+    /**
+     * @param bookDTO the requested book, only branch, title, author and genre are used
+     * @return new available book with a fresh id
+     */
+    public static Book toNewBook(BookDTO bookDTO) {
+        return Book.builder()
+                .id(UUID.randomUUID())
+                .branch(bookDTO.getBranch())
+                .title(bookDTO.getTitle())
+                .author(bookDTO.getAuthor())
+                .genre(bookDTO.getGenre())
+                .isAvailable(true)
+                .lastModified(Instant.now())
+                .build();
+    }
+}
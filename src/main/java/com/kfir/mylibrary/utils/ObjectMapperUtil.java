@@ -1,29 +1,18 @@
 package com.kfir.mylibrary.utils;
 
-import org.modelmapper.ModelMapper;
-import org.modelmapper.convention.MatchingStrategies;
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.entities.Book;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
- * For mapping one object to another
+ * For mapping one object to another.
+ * Mappings are resolved to the explicit mappers (see {@link BookMapper}), no reflection is involved
  */
 public class ObjectMapperUtil {
 
-    private static final ModelMapper modelMapper;
-
-    /*
-      Model mapper property setting are specified in the following block.
-      Default property matching strategy is set to Strict see {@link MatchingStrategies}
-      Custom mappings are added using {@link ModelMapper#addMappings(PropertyMap)}
-     */
-    static {
-        modelMapper = new ModelMapper();
-        modelMapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
-    }
-
     /**
      * Hide from public usage.
      */
@@ -31,21 +20,25 @@ public class ObjectMapperUtil {
     }
 
     /**
-     * <p>Note: outClass object must have default constructor with no arguments</p>
-     *
      * @param <D>      type of result object.
      * @param <T>      type of source object to map from.
      * @param entity   entity that needs to be mapped.
      * @param outClass class of result object.
      * @return new object of <code>outClass</code> type.
+     * @throws IllegalArgumentException in case there is no mapping between the types
      */
     public static <D, T> D map(final T entity, Class<D> outClass) {
-        return modelMapper.map(entity, outClass);
+        if (outClass == BookDTO.class && entity instanceof Book) {
+            return outClass.cast(BookMapper.toDTO((Book) entity));
+        }
+        if (outClass == Book.class && entity instanceof BookDTO) {
+            return outClass.cast(BookMapper.toEntity((BookDTO) entity));
+        }
+        throw new IllegalArgumentException(String.format("No mapping defined from %s to %s",
+                entity == null ? null : entity.getClass().getSimpleName(), outClass.getSimpleName()));
     }
 
     /**
-     * <p>Note: outClass object must have default constructor with no arguments</p>
-     *
      * @param entityList list of entities that needs to be mapped
      * @param outCLass   class of result list element
      * @param <D>        type of objects in result list
@@ -53,8 +46,10 @@ public class ObjectMapperUtil {
      * @return list of mapped object with <code><D></code> type.
      */
     public static <D, T> List<D> mapAll(final Collection<T> entityList, Class<D> outCLass) {
-        return entityList.stream()
-                .map(entity -> map(entity, outCLass))
-                .collect(Collectors.toList());
+        List<D> result = new ArrayList<>(entityList.size());
+        for (T entity : entityList) {
+            result.add(map(entity, outCLass));
+        }
+        return result;
     }
 }
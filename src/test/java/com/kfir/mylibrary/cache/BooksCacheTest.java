@@ -0,0 +1,47 @@
+package com.kfir.mylibrary.cache;
+
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFields;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BooksCacheTest {
+
+    @Test
+    void searchesOfAnotherFieldsetAreCachedApart() {
+        BooksCache cache = new BooksCache(1000, Duration.ofMinutes(5), 1000);
+        AtomicInteger loads = new AtomicInteger();
+        BookFields titles = BookFields.parse("title");
+
+        cache.getQuery("genre", "Novel", null, titles, () -> load(loads));
+        cache.getQuery("genre", "Novel", null, BookFields.all(), () -> load(loads));
+        cache.getQuery("genre", "Novel", null, titles, () -> load(loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void aChangeEvictsTheSearchOfEveryFieldset() {
+        BooksCache cache = new BooksCache(1000, Duration.ofMinutes(5), 1000);
+        AtomicInteger loads = new AtomicInteger();
+        BookFields titles = BookFields.parse("title");
+        cache.getQuery("genre", "Novel", "north", titles, () -> load(loads));
+        cache.getQuery("genre", "Novel", "north", BookFields.all(), () -> load(loads));
+
+        cache.invalidate("Emma", "Jane Austen", "Novel", "north");
+        cache.getQuery("genre", "Novel", "north", titles, () -> load(loads));
+        cache.getQuery("genre", "Novel", "north", BookFields.all(), () -> load(loads));
+
+        assertEquals(4, loads.get());
+    }
+
+    private static List<Book> load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return List.of(new Book("Emma", "Jane Austen", "Novel"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.kfir.mylibrary.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 50;
+
+    @Test
+    void concurrentCallersShareOneLoaderInvocation() throws Exception {
+        SingleFlight<String, List<String>> flight = new SingleFlight<>("test", 1000);
+        AtomicInteger invocations = new AtomicInteger();
+        List<String> loaded = List.of("Dune");
+
+        List<List<String>> results = callConcurrently(CALLERS, () -> flight.execute("genre", () -> {
+            invocations.incrementAndGet();
+            awaitFollowers(flight, CALLERS - 1);
+            return loaded;
+        }));
+
+        assertEquals(1, invocations.get());
+        results.forEach(result -> assertSame(loaded, result));
+        assertEquals(1, flight.executedCount());
+        assertEquals(CALLERS - 1, flight.coalescedCount());
+    }
+
+    @Test
+    void followersShareTheExceptionOfTheCall() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>("test", 1000);
+        AtomicInteger invocations = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> calls = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                calls.add(executor.submit(() -> flight.execute("genre", () -> {
+                    invocations.incrementAndGet();
+                    awaitFollowers(flight, CALLERS - 1);
+                    throw new IllegalStateException("db down");
+                })));
+            }
+            for (Future<String> call : calls) {
+                ExecutionException e = assertThrows(ExecutionException.class, call::get);
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, invocations.get());
+    }
+
+    @Test
+    void aCallIsRunAgainOnceItCompleted() {
+        SingleFlight<String, String> flight = new SingleFlight<>("test", 1000);
+        AtomicInteger invocations = new AtomicInteger();
+
+        flight.execute("genre", () -> "first " + invocations.incrementAndGet());
+        assertEquals("second 2", flight.execute("genre", () -> "second " + invocations.incrementAndGet()));
+    }
+
+    private static <V> List<V> callConcurrently(int callers, Supplier<V> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Callable<V>> calls = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                calls.add(call::get);
+            }
+            List<V> results = new ArrayList<>();
+            for (Future<V> result : executor.invokeAll(calls)) {
+                results.add(result.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Keeps the call running until the other callers joined it
+     */
+    private static void awaitFollowers(SingleFlight<?, ?> flight, int followers) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (flight.coalescedCount() < followers) {
+            assertTrue(System.nanoTime() < deadline, "the callers did not join the running call");
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.kfir.mylibrary.controllers;
+
+import com.kfir.mylibrary.MyLibraryApplication;
+import com.kfir.mylibrary.entities.Book;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load comparison of the blocking and the reactive books API on the same mongo and the same request thread budget:
+ * a burst of concurrent connections is sent to the genre search of each stack, the served requests and their
+ * latencies are logged. Opt-in, run with -Dbooks.loadtest=true, needs docker
+ */
+@Slf4j
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "books.loadtest", matches = "true")
+class BooksApiLoadTest {
+
+    private static final int CONNECTIONS = 1000;
+    private static final int REQUEST_THREADS = 50;
+    private static final int BOOKS = 200;
+    private static final String GENRE = "Load";
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Test
+    void reactiveStackServesAtLeastTheConnectionsOfTheBlockingStack() throws Exception {
+        Burst blocking = burst(false);
+        Burst reactive = burst(true);
+
+        log.info("blocking: {}", blocking);
+        log.info("reactive: {}", reactive);
+        assertEquals(CONNECTIONS, reactive.served(), "reactive: " + reactive);
+        assertTrue(reactive.served() >= blocking.served(), "blocking: " + blocking + ", reactive: " + reactive);
+    }
+
+    private Burst burst(boolean reactive) throws Exception {
+        SpringApplicationBuilder application = new SpringApplicationBuilder(MyLibraryApplication.class)
+                .properties("server.port=0",
+                        "spring.data.mongodb.uri=" + mongo.getReplicaSetUrl("books"),
+                        "server.tomcat.threads.max=" + REQUEST_THREADS);
+        if (reactive) {
+            application.profiles("reactive");
+        }
+        try (ConfigurableApplicationContext context = application.run()) {
+            MongoTemplate template = context.getBean(MongoTemplate.class);
+            if (template.count(new Query(), Book.class) == 0) {
+                List<Book> books = new ArrayList<>();
+                for (int i = 0; i < BOOKS; i++) {
+                    books.add(new Book("Title " + i, "Author " + i, GENRE));
+                }
+                template.insertAll(books);
+            }
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            return send(reactive ? "reactive" : "blocking", URI.create("http://localhost:" + port + "/books/genre/" + GENRE));
+        }
+    }
+
+    private Burst send(String stack, URI uri) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Accept", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        for (int i = 0; i < 50; i++) {
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> latencies = new ArrayList<>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            long sent = System.nanoTime();
+            latencies.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(response -> response.statusCode() == 200 ? System.nanoTime() - sent : -1L)
+                    .exceptionally(e -> -1L));
+        }
+        List<Long> served = latencies.stream().map(CompletableFuture::join).filter(latency -> latency >= 0).sorted().toList();
+        long elapsed = System.nanoTime() - start;
+        return new Burst(stack, served.size(), percentile(served, 50), percentile(served, 99), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return -1;
+        }
+        long nanos = sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private record Burst(String stack, int served, long p50Millis, long p99Millis, long elapsedMillis) {
+    }
+}
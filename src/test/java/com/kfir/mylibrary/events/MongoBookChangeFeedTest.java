@@ -0,0 +1,252 @@
+package com.kfir.mylibrary.events;
+
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BookFields;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Resuming the books events with Last-Event-ID on a single node replica set. Two changes are retained and at most
+ * five missed changes are read back from the db, so the three ways of resuming are reached with a few books.
+ * Skipped where docker is not available
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"books.events.retained=2", "books.events.catch-up-limit=5"})
+@Testcontainers(disabledWithoutDocker = true)
+class MongoBookChangeFeedTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Autowired
+    private BooksCache cache;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void resumesFromTheRetainedChanges() throws Exception {
+        List<Event> created;
+        try (Events events = subscribe(null)) {
+            events.awaitWatcher();
+            created = create(events, 2);
+        }
+
+        try (Events resumed = subscribe(created.get(0).id())) {
+            assertEquals(created.get(1), resumed.next());
+            assertNull(resumed.poll());
+            create(resumed, 1);
+        }
+    }
+
+    @Test
+    void resumesFromTheDbBeforeTheRetainedChanges() throws Exception {
+        String after;
+        List<Event> created;
+        try (Events events = subscribe(null)) {
+            after = events.awaitWatcher().id();
+            created = create(events, 4);
+        }
+
+        try (Events resumed = subscribe(after)) {
+            for (Event event : created) {
+                assertEquals(event, resumed.next());
+            }
+            assertNull(resumed.poll());
+        }
+    }
+
+    @Test
+    void sendsAResyncPastTheCatchUpLimit() throws Exception {
+        String after;
+        List<Event> created;
+        try (Events events = subscribe(null)) {
+            after = events.awaitWatcher().id();
+            created = create(events, 9);
+        }
+
+        try (Events resumed = subscribe(after)) {
+            for (Event event : created.subList(0, 5)) {
+                assertEquals(event, resumed.next());
+            }
+            Event resync = resumed.next();
+            assertEquals("resync", resync.name());
+            assertEquals(created.get(5).id(), resync.id());
+            assertNull(resumed.poll());
+            // the changes published after the catch up started are still sent
+            create(resumed, 1);
+        }
+    }
+
+    @Test
+    void namesAReplaceAfterTheAvailabilityChange() throws Exception {
+        try (Events events = subscribe(null)) {
+            events.awaitWatcher();
+            Book book = template.insert(new Book("Replaced", "Author", "Novel"));
+            assertEquals("create", events.next().name());
+
+            book.setAvailable(false);
+            template.save(book);
+            assertEquals("borrow", events.next().name());
+
+            book.setTitle("Replaced again");
+            template.save(book);
+            assertEquals("update", events.next().name());
+
+            book.setAvailable(true);
+            template.save(book);
+            assertEquals("return", events.next().name());
+        }
+    }
+
+    @Test
+    void aChangeWrittenByAnotherInstanceEvictsTheCachedSearches() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        try (Events events = subscribe(null)) {
+            events.awaitWatcher();
+            cache.getQuery("genre", "Evicted", null, BookFields.all(), () -> load(loads));
+
+            // written straight to the db, as by another instance or the reactive stack
+            Book book = template.insert(new Book("Evicted", "Author", "Evicted"));
+            assertEquals("create", events.next().name());
+            cache.getQuery("genre", "Evicted", null, BookFields.all(), () -> load(loads));
+
+            book.setAvailable(false);
+            template.save(book);
+            assertEquals("borrow", events.next().name());
+            cache.getQuery("genre", "Evicted", null, BookFields.all(), () -> load(loads));
+        }
+        assertEquals(3, loads.get());
+    }
+
+    private static List<Book> load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return List.of();
+    }
+
+    private List<Event> create(Events events, int count) throws InterruptedException {
+        List<Event> created = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            template.insert(new Book("Title " + System.nanoTime(), "Author", "Novel"));
+            Event event = events.next();
+            assertEquals("create", event.name());
+            created.add(event);
+        }
+        return created;
+    }
+
+    private Events subscribe(String lastEventId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/books/events"))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        Events events = new Events();
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines())
+                .thenAccept(response -> events.read(response.body()));
+        return events;
+    }
+
+    private record Event(String id, String name, String data) {
+    }
+
+    /**
+     * The events received on one connection, in order
+     */
+    private class Events implements AutoCloseable {
+
+        private final BlockingQueue<Event> received = new LinkedBlockingQueue<>();
+        private volatile Stream<String> lines;
+
+        private void read(Stream<String> lines) {
+            this.lines = lines;
+            String id = null;
+            String name = null;
+            StringBuilder data = new StringBuilder();
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (line.isEmpty()) {
+                    if (name != null) {
+                        received.add(new Event(id, name, data.toString()));
+                    }
+                    id = null;
+                    name = null;
+                    data.setLength(0);
+                } else if (line.startsWith("id:")) {
+                    id = line.substring(3);
+                } else if (line.startsWith("event:")) {
+                    name = line.substring(6);
+                } else if (line.startsWith("data:")) {
+                    data.append(line.substring(5));
+                }
+            }
+        }
+
+        /**
+         * The change stream is opened once the application is ready, books are created until the first one is sent
+         */
+        private Event awaitWatcher() throws InterruptedException {
+            for (int i = 0; i < 30; i++) {
+                template.insert(new Book("Warm up " + i, "Author", "Novel"));
+                Event event = poll();
+                if (event != null) {
+                    Event last = event;
+                    while ((event = poll()) != null) {
+                        last = event;
+                    }
+                    return last;
+                }
+            }
+            throw new AssertionError("the books change feed did not start");
+        }
+
+        private Event next() throws InterruptedException {
+            Event event = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event, "no event received");
+            return event;
+        }
+
+        /**
+         * @return the next event received within a second, null if there is none
+         */
+        private Event poll() throws InterruptedException {
+            return received.poll(1, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void close() {
+            if (lines != null) {
+                lines.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.kfir.mylibrary.metrics;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import com.kfir.mylibrary.repositories.BooksRepository;
+import com.kfir.mylibrary.services.BookResult;
+import com.kfir.mylibrary.services.BooksService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BooksMetricsTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void gaugesShowTheRefreshedCounts() {
+        BooksRepository repo = mock(BooksRepository.class);
+        when(repo.countByIsAvailable(true)).thenReturn(7L);
+        when(repo.countByIsAvailable(false)).thenReturn(3L);
+        BooksMetrics metrics = new BooksMetrics();
+        ReflectionTestUtils.setField(metrics, "repo", repo);
+        metrics.bindTo(registry);
+
+        assertEquals(0, registry.get("books.count").tag("status", "available").gauge().value());
+        metrics.refreshCounts();
+
+        assertEquals(7, registry.get("books.count").tag("status", "available").gauge().value());
+        assertEquals(3, registry.get("books.count").tag("status", "borrowed").gauge().value());
+    }
+
+    @Test
+    void failedResultsAndExceptionsOfTheServiceAreCounted() {
+        BooksService service = mock(BooksService.class);
+        when(service.borrowBook(any(), any())).thenReturn(BookResult.conflict("unavailable"));
+        when(service.returnBook(any(), any())).thenReturn(BookResult.ok(ResponseEntity.ok(new BookDTO())));
+        when(service.createNew(any())).thenThrow(new InvalidDataException("invalid"));
+        BooksService counted = counted(service);
+
+        counted.borrowBook("id", null);
+        counted.borrowBook("id", null);
+        counted.returnBook("id", null);
+        assertThrows(InvalidDataException.class, () -> counted.createNew(new BookDTO()));
+
+        assertEquals(2, registry.get("books.failed.results").tag("outcome", "CONFLICT").counter().count());
+        assertNull(registry.find("books.failed.results").tag("outcome", "OK").counter());
+        assertEquals(1, registry.get("books.exceptions").tag("exception", "InvalidDataException").counter().count());
+    }
+
+    private BooksService counted(BooksService service) {
+        ExceptionMetricsAspect aspect = new ExceptionMetricsAspect();
+        ReflectionTestUtils.setField(aspect, "registry", registry);
+        AspectJProxyFactory proxy = new AspectJProxyFactory(service);
+        proxy.addInterface(BooksService.class);
+        proxy.addAspect(aspect);
+        return proxy.getProxy();
+    }
+}
@@ -0,0 +1,35 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.exceptions.InvalidDataException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BookFieldsTest {
+
+    @Test
+    void missingOrBlankFieldsAreAllTheFields() {
+        assertSame(BookFields.all(), BookFields.parse(null));
+        assertSame(BookFields.all(), BookFields.parse("  "));
+    }
+
+    @Test
+    void fieldsFollowTheOrderOfTheDto() {
+        assertEquals(List.of("id", "title", "dueDate"), BookFields.parse(" dueDate,,title ,id").getNames());
+    }
+
+    @Test
+    void separatorsWithoutFieldsAreRejected() {
+        assertThrows(InvalidDataException.class, () -> BookFields.parse(",,,"));
+        assertThrows(InvalidDataException.class, () -> BookFields.parse(" , ,"));
+    }
+
+    @Test
+    void unknownFieldsAreRejected() {
+        assertThrows(InvalidDataException.class, () -> BookFields.parse("title,isbn"));
+    }
+}
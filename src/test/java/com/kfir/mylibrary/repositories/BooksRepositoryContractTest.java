@@ -0,0 +1,243 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every books store must have, run against the embedded store and against mongo
+ */
+abstract class BooksRepositoryContractTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 5, 1);
+    private static final LocalDate DUE = TODAY.plusDays(14);
+    private static final int THREADS = 32;
+
+    protected abstract BooksRepository repo();
+
+    protected abstract TransactionTemplate transactions();
+
+    /**
+     * @return the store as it is read again after the application restarted
+     */
+    protected abstract BooksRepository restarted();
+
+    @Test
+    void borrowIfAvailableBorrowsABookOnce() {
+        Book book = repo().save(book("Dune"));
+
+        assertTrue(repo().borrowIfAvailable(book.getId(), null, TODAY, DUE).isPresent());
+        assertTrue(repo().borrowIfAvailable(book.getId(), null, TODAY, DUE).isEmpty());
+        assertTrue(repo().borrowIfAvailable(UUID.randomUUID(), null, TODAY, DUE).isEmpty());
+
+        Book borrowed = repo().findById(book.getId()).orElseThrow();
+        assertFalse(borrowed.isAvailable());
+        assertEquals(DUE, borrowed.getDueDate());
+    }
+
+    @Test
+    void concurrentBorrowsOfABookHaveOneWinner() throws Exception {
+        Book book = repo().save(book("Middlemarch"));
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Boolean>> borrowers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            borrowers.add(() -> {
+                start.await();
+                return repo().borrowIfAvailable(book.getId(), null, TODAY, DUE).isPresent();
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        int winners = 0;
+        try {
+            List<Future<Boolean>> borrows = borrowers.stream().map(executor::submit).toList();
+            start.countDown();
+            for (Future<Boolean> borrow : borrows) {
+                winners += borrow.get() ? 1 : 0;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, winners);
+        assertFalse(repo().findById(book.getId()).orElseThrow().isAvailable());
+    }
+
+    @Test
+    void availabilityChangesOfABranchChangeOnlyItsBooks() {
+        Book book = book("Emma");
+        book.setBranch("north");
+        repo().save(book);
+
+        assertTrue(repo().borrowIfAvailable(book.getId(), "south", TODAY, DUE).isEmpty());
+        assertTrue(repo().borrowIfAvailable(book.getId(), "north", TODAY, DUE).isPresent());
+        assertTrue(repo().returnIfUnavailable(book.getId(), "south").isEmpty());
+        assertTrue(repo().returnIfUnavailable(book.getId(), "north").isPresent());
+    }
+
+    @Test
+    void returnIfUnavailableReturnsABorrowedBookOnce() {
+        Book book = repo().save(book("Emma"));
+
+        assertTrue(repo().returnIfUnavailable(book.getId(), null).isEmpty());
+        repo().borrowIfAvailable(book.getId(), null, TODAY, DUE);
+        assertTrue(repo().returnIfUnavailable(book.getId(), null).isPresent());
+        assertTrue(repo().returnIfUnavailable(book.getId(), null).isEmpty());
+
+        assertTrue(repo().findById(book.getId()).orElseThrow().isAvailable());
+    }
+
+    @Test
+    void borrowAllIfAvailableReturnsOnlyTheBooksItBorrowed() {
+        Book available = repo().save(book("Available"));
+        Book borrowed = repo().save(book("Borrowed"));
+        repo().borrowIfAvailable(borrowed.getId(), null, TODAY, DUE);
+
+        List<Book> changed = repo().borrowAllIfAvailable(
+                List.of(available.getId(), borrowed.getId(), UUID.randomUUID()), TODAY, DUE, Instant.now());
+
+        assertEquals(List.of(available.getId()), changed.stream().map(Book::getId).toList());
+        assertFalse(changed.get(0).isAvailable());
+    }
+
+    @Test
+    void concurrentBatchesBorrowEveryBookOnce() throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(repo().save(book("Batch " + i)).getId());
+        }
+        // the same modification time for every batch, only the batch itself tells its books apart
+        Instant lastModified = Instant.now();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<List<Book>>> batches = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            batches.add(() -> {
+                start.await();
+                return repo().borrowAllIfAvailable(ids, TODAY, DUE, lastModified);
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<UUID> borrowed = new ArrayList<>();
+        try {
+            List<Future<List<Book>>> results = batches.stream().map(executor::submit).toList();
+            start.countDown();
+            for (Future<List<Book>> result : results) {
+                result.get().forEach(book -> borrowed.add(book.getId()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(ids.size(), borrowed.size());
+        assertEquals(Set.copyOf(ids), Set.copyOf(borrowed));
+    }
+
+    @Test
+    void slicesFollowTheTitleOrder() {
+        for (String title : List.of("Dune", "Beloved", "Emma", "Amsterdam", "Carrie")) {
+            repo().save(book(title));
+        }
+
+        Slice<Book> first = repo().findSlice(BookFilter.all(), null, 2);
+        Slice<Book> second = repo().findSlice(BookFilter.all(), BookCursor.of(first.getContent().get(1)), 2);
+        Slice<Book> last = repo().findSlice(BookFilter.all(), BookCursor.of(second.getContent().get(1)), 2);
+
+        assertEquals(List.of("Amsterdam", "Beloved"), titles(first));
+        assertTrue(first.hasNext());
+        assertEquals(List.of("Carrie", "Dune"), titles(second));
+        assertEquals(List.of("Emma"), titles(last));
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    void dueDateRangeAlsoMatchesTheLoansChangedSince() {
+        LocalDate today = LocalDate.now();
+        Instant lastRun = Instant.now().minusSeconds(60);
+        Book inRange = loan("In range", today.minusDays(1), lastRun.minusSeconds(60));
+        Book editedBeforeRange = loan("Edited before the range", today.minusDays(10), lastRun.plusSeconds(30));
+        Book alreadyNotified = loan("Already notified", today.minusDays(10), lastRun.minusSeconds(60));
+        Book notDue = loan("Not due", today.plusDays(1), lastRun.plusSeconds(30));
+        List.of(inRange, editedBeforeRange, alreadyNotified, notDue).forEach(repo()::save);
+
+        BookFilter filter = BookFilter.byDueDateBetween(today.minusDays(2), today).orChangedSince(lastRun);
+
+        assertEquals(List.of("Edited before the range", "In range"), titles(repo().findSlice(filter, null, 10)));
+        assertEquals(List.of("In range"), titles(repo().findSlice(BookFilter.byDueDateBetween(today.minusDays(2), today), null, 10)));
+    }
+
+    @Test
+    void insertAllReportsTheDuplicatesAndInsertsTheOthers() {
+        Book existing = repo().save(book("Existing"));
+        Book duplicate = book("Duplicate");
+        duplicate.setId(existing.getId());
+
+        Map<Integer, String> errors = repo().insertAll(List.of(book("First"), duplicate, book("Last")));
+
+        assertEquals(Set.of(1), errors.keySet());
+        assertEquals(3, repo().count());
+        assertEquals("Existing", repo().findById(existing.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    void rollbackDiscardsTheChangesOfTheTransaction() {
+        Book book = repo().save(book("Ulysses"));
+
+        assertThrows(IllegalStateException.class, () -> transactions().executeWithoutResult(status -> {
+            repo().borrowIfAvailable(book.getId(), null, TODAY, DUE);
+            repo().save(book("Written in the transaction"));
+            throw new IllegalStateException("rolled back");
+        }));
+
+        assertTrue(repo().findById(book.getId()).orElseThrow().isAvailable());
+        assertEquals(1, repo().count());
+    }
+
+    @Test
+    void changesSurviveARestart() {
+        Book borrowed = repo().save(book("Borrowed"));
+        Book deleted = repo().save(book("Deleted"));
+        Book updated = repo().save(book("Before"));
+        repo().borrowIfAvailable(borrowed.getId(), null, TODAY, DUE);
+        repo().deleteById(deleted.getId());
+        updated.setTitle("After");
+        repo().save(updated);
+
+        BooksRepository restarted = restarted();
+
+        assertFalse(restarted.findById(borrowed.getId()).orElseThrow().isAvailable());
+        assertFalse(restarted.existsById(deleted.getId()));
+        assertEquals("After", restarted.findById(updated.getId()).orElseThrow().getTitle());
+        assertEquals(2, restarted.count());
+    }
+
+    private static Book book(String title) {
+        return new Book(title, "Author of " + title, "Novel");
+    }
+
+    private static Book loan(String title, LocalDate dueDate, Instant lastModified) {
+        return book(title).toBuilder().isAvailable(false).borrowedDate(dueDate.minusDays(14)).dueDate(dueDate)
+                .lastModified(lastModified).build();
+    }
+
+    private static List<String> titles(Slice<Book> slice) {
+        return slice.getContent().stream().map(Book::getTitle).toList();
+    }
+}
@@ -0,0 +1,11 @@
+package com.kfir.mylibrary.repositories;
+
+class EmbeddedJobLocksTest extends JobLocksContractTest {
+
+    private final EmbeddedJobLocks locks = new EmbeddedJobLocks();
+
+    @Override
+    protected JobLocks locks() {
+        return locks;
+    }
+}
@@ -0,0 +1,91 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.entities.Book;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryBooksRepositoryTest extends BooksRepositoryContractTest {
+
+    @TempDir
+    Path directory;
+
+    private InMemoryBooksRepository repo;
+    private TransactionTemplate transactions;
+
+    @BeforeEach
+    void setUp() {
+        repo = open();
+        transactions = new TransactionTemplate(new EmbeddedTransactionManager(repo));
+    }
+
+    @Override
+    protected BooksRepository repo() {
+        return repo;
+    }
+
+    @Override
+    protected TransactionTemplate transactions() {
+        return transactions;
+    }
+
+    @Test
+    void otherThreadsDoNotReadTheChangesOfARunningTransaction() {
+        Book book = repo.save(new Book("Dune", "Frank Herbert", "Science Fiction"));
+
+        transactions.executeWithoutResult(status -> {
+            repo.borrowIfAvailable(book.getId(), null, LocalDate.now(), LocalDate.now().plusDays(14));
+            assertFalse(repo.findById(book.getId()).orElseThrow().isAvailable());
+            assertTrue(CompletableFuture.supplyAsync(() -> repo.findById(book.getId()).orElseThrow().isAvailable()).join());
+            assertTrue(CompletableFuture.supplyAsync(() -> repo.findAllByIsAvailable(false)).join().isEmpty());
+        });
+
+        assertFalse(repo.findById(book.getId()).orElseThrow().isAvailable());
+        assertEquals(1, repo.findAllByIsAvailable(false).size());
+    }
+
+    @Test
+    void rollbackKeepsTheSequence() {
+        repo.save(new Book("Dune", "Frank Herbert", "Science Fiction"));
+        long sequence = repo.sequence();
+
+        assertThrows(IllegalStateException.class, () -> transactions.executeWithoutResult(status -> {
+            repo.save(new Book("Emma", "Jane Austen", "Novel"));
+            throw new IllegalStateException("rolled back");
+        }));
+        assertEquals(sequence, repo.sequence());
+
+        Book saved = repo.save(new Book("Ulysses", "James Joyce", "Novel"));
+        assertEquals(sequence + 1, repo.sequence());
+        assertTrue(restarted().findById(saved.getId()).isPresent());
+    }
+
+    /**
+     * The store is opened again without a snapshot of the first one, like after a crash, so the changes are
+     * replayed from the log
+     */
+    @Override
+    protected BooksRepository restarted() {
+        return open();
+    }
+
+    private InMemoryBooksRepository open() {
+        InMemoryBooksRepository store = new InMemoryBooksRepository(directory.toString(), false);
+        ApplicationEventPublisher noEvents = event -> {
+        };
+        ReflectionTestUtils.setField(store, "publisher", noEvents);
+        return store;
+    }
+}
@@ -0,0 +1,48 @@
+package com.kfir.mylibrary.repositories;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The behaviour every job lease store must have
+ */
+abstract class JobLocksContractTest {
+
+    protected abstract JobLocks locks();
+
+    @Test
+    void anotherOwnerDoesNotTakeAHeldLease() {
+        String job = job();
+        assertTrue(locks().tryLock(job, "first", Duration.ofMinutes(5)));
+
+        assertFalse(locks().tryLock(job, "second", Duration.ofMinutes(5)));
+        assertTrue(locks().tryLock(job, "first", Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void anotherOwnerTakesAnEndedLease() throws InterruptedException {
+        String job = job();
+        assertTrue(locks().tryLock(job, "first", Duration.ofMillis(100)));
+
+        Thread.sleep(200);
+
+        assertTrue(locks().tryLock(job, "second", Duration.ofMinutes(5)));
+        assertFalse(locks().tryLock(job, "first", Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void leasesOfOtherJobsAreIndependent() {
+        assertTrue(locks().tryLock(job(), "first", Duration.ofMinutes(5)));
+
+        assertTrue(locks().tryLock(job(), "second", Duration.ofMinutes(5)));
+    }
+
+    private static String job() {
+        return "job-" + UUID.randomUUID();
+    }
+}
@@ -0,0 +1,51 @@
+package com.kfir.mylibrary.repositories;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * The contract against a single node replica set (transactions require one), skipped where docker is not available
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+class MongoBooksRepositoryTest extends BooksRepositoryContractTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private BooksRepository repo;
+
+    @Autowired
+    private TransactionTemplate transactions;
+
+    @BeforeEach
+    void setUp() {
+        repo.deleteAll();
+    }
+
+    @Override
+    protected BooksRepository repo() {
+        return repo;
+    }
+
+    @Override
+    protected TransactionTemplate transactions() {
+        return transactions;
+    }
+
+    /**
+     * The books are kept by the db, a restarted application reads them through a new connection like this one
+     */
+    @Override
+    protected BooksRepository restarted() {
+        return repo;
+    }
+}
@@ -0,0 +1,28 @@
+package com.kfir.mylibrary.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * The job leases shared through the db, skipped where docker is not available
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+class MongoJobLocksTest extends JobLocksContractTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private JobLocks locks;
+
+    @Override
+    protected JobLocks locks() {
+        return locks;
+    }
+}
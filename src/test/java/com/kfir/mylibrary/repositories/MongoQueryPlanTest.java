@@ -0,0 +1,125 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.config.MongoIndexConfig;
+import com.kfir.mylibrary.entities.Book;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Explains every list query of the repository and fails on a collection scan, skipped where docker is not available
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+class MongoQueryPlanTest {
+
+    private static final Sort TITLE_ORDER = Sort.by(Sort.Direction.ASC, "title", "id");
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate template;
+
+    @Autowired
+    private MongoIndexConfig indexes;
+
+    @Autowired
+    private BooksRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        indexes.createIndexes();
+        if (repo.count() == 0) {
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                Book book = new Book("Title " + i, "Author " + i % 20, "Genre " + i % 10);
+                book.setBranch("Branch " + i % 5);
+                books.add(book);
+            }
+            repo.insertAll(books);
+        }
+    }
+
+    @Test
+    void listQueriesUseIndexes() {
+        Map<String, Query> queries = new LinkedHashMap<>();
+        queries.put("findAllByTitle", Query.query(Criteria.where("title").is("Title 7")));
+        queries.put("findAllByAuthor", Query.query(Criteria.where("author").is("Author 7")));
+        queries.put("findAllByGenre", Query.query(Criteria.where("genre").is("Genre 7")));
+        queries.put("findAllByIsAvailable", Query.query(Criteria.where("isAvailable").is(true)));
+        queries.put("findAllByDueDateIsBefore", Query.query(Criteria.where("isAvailable").is(false).and("dueDate").lt(LocalDate.now())));
+        queries.put("findAll sorted by title", new Query().with(Sort.by("title")));
+        Map<String, BookFilter> filters = new LinkedHashMap<>();
+        filters.put("all", BookFilter.all());
+        filters.put("title", BookFilter.byTitle("Title 7"));
+        filters.put("author", BookFilter.byAuthor("Author 7"));
+        filters.put("genre", BookFilter.byGenre("Genre 7"));
+        filters.put("isAvailable", BookFilter.byIsAvailable(true));
+        filters.put("dueDate", BookFilter.byDueDateIsBefore(LocalDate.now()));
+        filters.put("dueDate or changed", BookFilter.byDueDateBetween(LocalDate.now().minusDays(1), LocalDate.now())
+                .orChangedSince(Instant.now().minusSeconds(3600)));
+        filters.forEach((name, filter) -> {
+            queries.put("filter " + name, Query.query(filter.toCriteria()).with(TITLE_ORDER));
+            queries.put("filter " + name + " in a branch", Query.query(filter.inBranch("Branch 1").toCriteria()).with(TITLE_ORDER));
+        });
+
+        queries.forEach((name, query) -> {
+            List<String> stages = new ArrayList<>();
+            collectStages(explain(query).get("queryPlanner"), stages);
+            assertFalse(stages.contains("COLLSCAN"), name + " scans the collection: " + stages);
+            assertTrue(stages.contains("IXSCAN"), name + " uses no index: " + stages);
+        });
+    }
+
+    private Document explain(Query query) {
+        MongoPersistentEntity<?> entity = template.getConverter().getMappingContext().getRequiredPersistentEntity(Book.class);
+        QueryMapper mapper = new QueryMapper(template.getConverter());
+        return template.getCollection(template.getCollectionName(Book.class))
+                .find(mapper.getMappedObject(query.getQueryObject(), entity))
+                .sort(mapper.getMappedSort(query.getSortObject(), entity))
+                .explain();
+    }
+
+    /**
+     * Collects the stages of the winning plan, the plan is a tree of documents with the stage names in "stage"
+     */
+    private void collectStages(Object node, List<String> stages) {
+        if (node instanceof Document document) {
+            document.forEach((key, value) -> {
+                if (key.equals("rejectedPlans")) {
+                    return;
+                }
+                if (key.equals("stage") && value instanceof String stage) {
+                    stages.add(stage);
+                }
+                collectStages(value, stages);
+            });
+        } else if (node instanceof List<?> list) {
+            list.forEach(child -> collectStages(child, stages));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.dto.BookDTO;
+import com.kfir.mylibrary.services.BooksService;
+import com.kfir.mylibrary.servicesImpl.OverDueService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Read routing against a single node replica set, with the read preferences of application.properties (the lists
+ * and the overdue job read from secondaryPreferred). Skipped where docker is not available
+ */
+@SpringBootTest
+@Testcontainers(disabledWithoutDocker = true)
+class ReadRoutingTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private BooksService service;
+
+    @Autowired
+    private OverDueService overDueService;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void listsReadFromTheirPreference() throws IOException {
+        double before = reads("lists", "secondaryPreferred");
+
+        readAll();
+
+        assertEquals(before + 1, reads("lists", "secondaryPreferred"));
+    }
+
+    @Test
+    void overdueJobReadsFromItsPreference() {
+        double before = reads("overdue", "secondaryPreferred");
+
+        overDueService.checkForOverdueBooks();
+
+        assertTrue(reads("overdue", "secondaryPreferred") > before);
+    }
+
+    @Test
+    void clientThatWroteReadsFromThePrimary() throws IOException {
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), writeResponse));
+        service.createNew(book("Dune"));
+        String wrote = writeResponse.getHeader(HttpHeaders.SET_COOKIE);
+        assertNotNull(wrote);
+        assertTrue(wrote.startsWith(ReadRouting.WROTE_COOKIE + "="));
+
+        MockHttpServletRequest writer = new MockHttpServletRequest();
+        writer.setCookies(new Cookie(ReadRouting.WROTE_COOKIE, wrote.substring(wrote.indexOf('=') + 1, wrote.indexOf(';'))));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(writer, new MockHttpServletResponse()));
+        double primary = reads("lists", "primary");
+        double secondary = reads("lists", "secondaryPreferred");
+
+        readAll();
+
+        assertEquals(primary + 1, reads("lists", "primary"));
+        assertEquals(secondary, reads("lists", "secondaryPreferred"));
+    }
+
+    @Test
+    void otherClientsKeepReadingFromTheirPreferenceAfterAWrite() throws IOException {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), new MockHttpServletResponse()));
+        service.createNew(book("Emma"));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), new MockHttpServletResponse()));
+        double before = reads("lists", "secondaryPreferred");
+
+        readAll();
+
+        assertEquals(before + 1, reads("lists", "secondaryPreferred"));
+    }
+
+    private void readAll() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        var body = service.findAll(null, BookFields.all(), MediaType.APPLICATION_JSON).toResponse().getBody();
+        if (body != null) {
+            body.writeTo(out);
+        }
+    }
+
+    private double reads(String workload, String preference) {
+        return registry.get("books.reads").tags("workload", workload, "preference", preference).counter().count();
+    }
+
+    private static BookDTO book(String title) {
+        BookDTO book = new BookDTO();
+        book.setTitle(title);
+        book.setAuthor("Author of " + title);
+        book.setGenre("Novel");
+        return book;
+    }
+}
@@ -0,0 +1,172 @@
+package com.kfir.mylibrary.repositories;
+
+import com.kfir.mylibrary.cache.BooksCache;
+import com.kfir.mylibrary.entities.Book;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WriteBehindBooksTest {
+
+    @TempDir
+    Path directory;
+
+    private MongoTemplate template;
+    private BulkOperations bulk;
+
+    @BeforeEach
+    void setUp() {
+        template = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class)).thenReturn(bulk);
+    }
+
+    @Test
+    void readsItsOwnQueuedWrite() {
+        WriteBehindBooks books = writeBehind();
+        Book book = new Book("Dune", "Frank Herbert", "Science Fiction");
+        books.save(book);
+
+        book.setTitle("changed after it was queued");
+        Book read = books.findById(book.getId()).orElseThrow();
+
+        assertEquals("Dune", read.getTitle());
+        assertEquals(1, books.pendingCount());
+        verify(template, never()).findById(any(), eq(Book.class));
+    }
+
+    @Test
+    void readsTheDbWhenNotQueued() {
+        WriteBehindBooks books = writeBehind();
+        UUID id = UUID.randomUUID();
+
+        assertFalse(books.findById(id).isPresent());
+        verify(template).findById(id, Book.class);
+    }
+
+    @Test
+    void recoversTheQueueAfterARestart() throws Exception {
+        Book book = new Book("Dune", "Frank Herbert", "Science Fiction");
+        // the first instance is never stopped, like a process that crashed before the flush
+        writeBehind().save(book);
+
+        WriteBehindBooks restarted = writeBehind();
+        assertEquals(1, restarted.pendingCount());
+        assertEquals("Dune", restarted.findById(book.getId()).orElseThrow().getTitle());
+
+        restarted.stop();
+        verify(bulk, times(1)).replaceOne(any(), eq(book), any());
+        verify(bulk).execute();
+        assertEquals(0, writeBehind().pendingCount());
+    }
+
+    @Test
+    void parksTheRejectedBooksAndKeepsOnlyTheTransientFailures() throws Exception {
+        Book rejected = new Book("Dune", "Frank Herbert", "Science Fiction");
+        Book retried = new Book("Emma", "Jane Austen", "Novel");
+        Book written = new Book("Ulysses", "James Joyce", "Novel");
+        WriteBehindBooks books = writeBehind();
+        books.save(rejected);
+        books.save(retried);
+        books.save(written);
+        when(bulk.execute()).thenThrow(new BulkOperationException("bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(),
+                List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0),
+                        new BulkWriteError(112, "write conflict", new BsonDocument(), 1)),
+                null, new ServerAddress(), Set.of())));
+
+        books.stop();
+
+        WriteBehindBooks restarted = writeBehind();
+        assertEquals(1, restarted.pendingCount());
+        assertTrue(restarted.findById(retried.getId()).isPresent());
+        Map<UUID, Book> parked = new HashMap<>();
+        BookLog rejectedLog = new BookLog(directory.resolve("rejected"), false);
+        rejectedLog.load(parked);
+        rejectedLog.close();
+        assertEquals(Set.of(rejected.getId()), parked.keySet());
+    }
+
+    @Test
+    void compactsTheQueueOnceItsLogIsLargeEnough() throws Exception {
+        WriteBehindBooks books = writeBehind(DataSize.ofBytes(1));
+        books.save(new Book("Dune", "Frank Herbert", "Science Fiction"));
+
+        books.stop();
+
+        assertEquals(0, Files.size(directory.resolve("books.log")));
+        assertEquals(0, writeBehind().pendingCount());
+    }
+
+    @Test
+    void skipsTheFinalFlushWhileTheFlusherStillWrites() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        when(bulk.execute()).thenAnswer(invocation -> {
+            writing.countDown();
+            // like a blocked socket read, the interrupt does not end the write
+            while (true) {
+                try {
+                    written.await();
+                    return null;
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+            }
+        });
+        WriteBehindBooks books = writeBehind();
+        books.save(new Book("Dune", "Frank Herbert", "Science Fiction"));
+        books.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        books.stop();
+
+        verify(bulk, times(1)).execute();
+        assertEquals(1, books.pendingCount());
+        written.countDown();
+    }
+
+    private WriteBehindBooks writeBehind() {
+        return writeBehind(DataSize.ofMegabytes(16));
+    }
+
+    private WriteBehindBooks writeBehind(DataSize compactSize) {
+        WriteBehindBooks books = new WriteBehindBooks(directory.toString(), false, 500, 10_000, Duration.ofMillis(50), compactSize);
+        ReflectionTestUtils.setField(books, "template", template);
+        ReflectionTestUtils.setField(books, "cache", new BooksCache(1000, Duration.ofMinutes(5), 1000));
+        ReflectionTestUtils.setField(books, "catalogueVersions", mock(CatalogueVersions.class));
+        return books;
+    }
+}
@@ -0,0 +1,43 @@
+package com.kfir.mylibrary.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BookResultTest {
+
+    @Test
+    void okReturnsTheResponse() {
+        ResponseEntity<String> response = ResponseEntity.ok("body");
+        assertSame(response, BookResult.ok(response).toResponse());
+    }
+
+    @Test
+    void failedOutcomesBuildTheErrorResponse() {
+        assertEquals(HttpStatus.ACCEPTED, BookResult.empty("no results").toResponse().getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, BookResult.notFound("not found").toResponse().getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, BookResult.conflict("unavailable").toResponse().getStatusCode());
+    }
+
+    @Test
+    void streamedErrorBodyIsWrittenAsJson() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = BookResult.<StreamingResponseBody>conflict("unavailable").toResponse();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        JsonNode body = new ObjectMapper().readTree(out.toByteArray());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals(409, body.get("status").asInt());
+        assertEquals("Conflict", body.get("error").asText());
+        assertEquals("unavailable", body.get("message").asText());
+    }
+}
@@ -0,0 +1,92 @@
+package com.kfir.mylibrary.servicesImpl;
+
+import com.kfir.mylibrary.dto.BatchResultDTO;
+import com.kfir.mylibrary.entities.Book;
+import com.kfir.mylibrary.repositories.BooksRepository;
+import com.kfir.mylibrary.services.BooksService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest
+@ActiveProfiles("embedded")
+class BooksServiceImplTest {
+
+    private static final int THREADS = 16;
+
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void embeddedStore(DynamicPropertyRegistry registry) {
+        registry.add("books.embedded.path", () -> directory.toString());
+    }
+
+    @Autowired
+    private BooksService service;
+
+    @Autowired
+    private BooksRepository repo;
+
+    @Test
+    void idsOfTheSameBookInAnotherCaseShareItsResult() {
+        Book book = repo.save(new Book("Dune", "Frank Herbert", "Science Fiction"));
+        String id = book.getId().toString();
+
+        BatchResultDTO batch = service.borrowBooks(List.of(id.toLowerCase(Locale.ROOT), id.toUpperCase(Locale.ROOT)), false).getBody();
+
+        assertEquals(2, batch.getResults().size());
+        assertEquals(id.toUpperCase(Locale.ROOT), batch.getResults().get(1).getId());
+        batch.getResults().forEach(result -> assertEquals(200, result.getStatus()));
+        assertFalse(repo.findById(book.getId()).orElseThrow().isAvailable());
+    }
+
+    @Test
+    void missingIdsAreRejectedPerItem() {
+        Book book = repo.save(new Book("Emma", "Jane Austen", "Novel"));
+
+        BatchResultDTO batch = service.borrowBooks(Arrays.asList(null, " ", book.getId().toString()), false).getBody();
+
+        assertEquals(List.of(400, 400, 200), batch.getResults().stream().map(BatchResultDTO.ItemResult::getStatus).toList());
+        assertEquals(1, batch.getSucceeded());
+        assertEquals(2, batch.getFailed());
+    }
+
+    @Test
+    void concurrentBatchesBorrowABookOnce() throws Exception {
+        Book book = repo.save(new Book("Ulysses", "James Joyce", "Novel"));
+        List<String> ids = List.of(book.getId().toString());
+
+        List<Callable<BatchResultDTO>> batches = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            batches.add(() -> service.borrowBooks(ids, false).getBody());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long succeeded = 0;
+        try {
+            for (Future<BatchResultDTO> batch : executor.invokeAll(batches)) {
+                succeeded += batch.get().getSucceeded();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, succeeded);
+    }
+}